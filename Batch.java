@@ -0,0 +1,141 @@
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+// Runs "find" on a whole stream of positions in one JVM, instead of one JVM per
+// position. The input is a series of records, each a header line and then the board
+// in the format Board.load reads (one line per row, like "print" shows it):
+//
+//   <id> <letters> [limit]
+//   - - - # - - # - # - - # - - -
+//   ...
+//
+// Blank lines and lines starting with ';' between records are skipped. Each record
+// gets its own Board, all of them sharing the one dictionary (which is only ever read).
+//
+// The positions are solved on the common fork/join pool, the same one findBest runs
+// its row and column searches on, so the searches of a position run on the thread
+// solving it while it waits for them. The results are written in input order, as
+// soon as the ones before them are done, each one a status line and then what "find"
+// would have printed, followed by a blank line:
+//
+//   <id> ok <moves> <time>us
+//   <id> error <why>
+//
+// Only so many positions are read ahead of the oldest one still being solved (see
+// ahead), so memory stays the same however long the input is.
+public class Batch {
+
+	private Dictionary dictionary;
+	private Rules rules;
+
+	// how many positions can be in flight (read but not written yet)
+	private int ahead;
+
+	// if set, what the searches did is added to it (see Stats)
+	public Stats stats;
+
+	public Batch(Dictionary dictionary) {
+		this.dictionary = dictionary;
+		rules = Rules.WORDS_WITH_FRIENDS;
+		ahead = ForkJoinPool.commonPool().getParallelism() * 4;
+	}
+
+	// solves every record in 'in', writing the results to 'out'. returns how many
+	// records failed
+	public int run(BufferedReader in, PrintStream out) throws IOException {
+		ArrayDeque<ForkJoinTask<String>> pending = new ArrayDeque<ForkJoinTask<String>>();
+		int failed = 0;
+		int line = 0;
+		String header;
+
+		while ((header = in.readLine()) != null) {
+			line++;
+			if (header.trim().length() == 0 || header.startsWith(";")) continue;
+
+			// the board is the next 'size' lines
+			StringBuilder board = new StringBuilder();
+			int rows = 0;
+			String row;
+			while (rows < rules.size && (row = in.readLine()) != null) {
+				board.append(row).append('\n');
+				rows++;
+			}
+			line += rows;
+
+			final String[] args = header.trim().split("\\s+");
+			final String text = board.toString();
+			final int at = line;
+			pending.add(ForkJoinPool.commonPool().submit(new Callable<String>() {
+				public String call() {
+					return solve(args, text, at);
+				}
+			}));
+
+			// write what's done, and wait for the oldest when we're too far ahead
+			while (!pending.isEmpty() && (pending.peek().isDone() || pending.size() >= ahead)) {
+				failed += write(pending.poll().join(), out);
+			}
+		}
+
+		while (!pending.isEmpty()) {
+			failed += write(pending.poll().join(), out);
+		}
+		return failed;
+	}
+
+	// writes one result, returns 1 if it was an error
+	private int write(String result, PrintStream out) {
+		out.print(result);
+		out.flush();
+		return result.split(" ", 3)[1].equals("error") ? 1 : 0;
+	}
+
+	// one record: 'args' is the header, 'board' its board, 'line' the line it ends on
+	private String solve(String[] args, String board, int line) {
+		long start = System.nanoTime();
+		String id = args[0];
+		if (args.length < 2 || args.length > 3 || (args.length == 3 && !args[2].matches("\\d+"))) {
+			return String.format("%s error line %d: expected <id> <letters> [limit]\n\n", id, line);
+		}
+		if (Rack.parse(args[1].toLowerCase()) == null) {
+			return String.format("%s error invalid character in tile set: %s\n\n", id, args[1]);
+		}
+		int limit = args.length == 3 ? Integer.parseInt(args[2]) : 0;
+
+		Board b = new Board(rules);
+		b.dictionary = dictionary;
+		if (stats != null) {
+			b.stats = new Stats();
+		}
+		try {
+			if (!b.load(new StringReader(board))) {
+				return String.format("%s error line %d: not a whole board\n\n", id, line);
+			}
+		} catch (Exception ex) {
+			return String.format("%s error line %d: %s\n\n", id, line, ex);
+		}
+
+		ByteArrayOutputStream moves = new ByteArrayOutputStream();
+		PrintStream out = new PrintStream(moves);
+		b.findBest(args[1], limit, out);
+		out.flush();
+		if (stats != null) {
+			stats.add(b.stats);
+		}
+
+		String result = moves.toString();
+		int count = 0;
+		for (int i = 0; i < result.length(); i++) {
+			if (result.charAt(i) == '\n') count++;
+		}
+		long micros = (System.nanoTime() - start) / 1000;
+		return String.format("%s ok %d %dus\n", id, count, micros) + result + "\n";
+	}
+}
@@ -1,92 +1,285 @@
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
+import java.io.PrintStream;
 import java.io.Reader;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
+// The state of a game: which letter is on each square, and whether it's a blank or was
+// part of the last play.
+//
+// The squares are flat arrays indexed by row * size + col, and everything that is the
+// same for every game (the bonus squares, letter values, bingo rules) lives in the
+// shared Rules. Boards are saved with write() in this layout (all numbers big endian):
+//
+//   int magic, byte version, byte rules id, byte size, int turn
+//   byte letters[size * size]    - 'a'-'z', or Tile.Empty
+//   byte flags[size * size]      - FRESH and BLANK bits
+//
+// Games are kept in journals (see Journal), which start from a board in this layout
+// and add the moves to it. Boards saved by older versions on their own, or with Java
+// serialization (see readObject), are still read, and turned into journals the next
+// time they're saved.
 public class Board implements Serializable {
 	private final static long serialVersionUID = -7508045570854076475L;
 	
-	// dictionary of words (see Main.java)
-	public transient HashMap<String, ArrayList<String>> dictionary;
+	private static final int MAGIC = 0x53435242; // "SCRB"
+	private static final int VERSION = 1;
 	
-	// bingo rules
-	private int bingoCount;
-	private int bingoBonus;
+	// bits in 'flags'
+	private static final byte FRESH = 1;
+	private static final byte BLANK = 2;
 	
-	// the tiles on the board (ie, the state of the game)
-	private Tile[][] tiles;
+	// dictionary of words (see Dictionary.java)
+	public transient Dictionary dictionary;
 	
-	// point values of the letters (changes for different rule sets)
-	private int[] letterValues;
+	// set by anything that changes the board, so unchanged boards don't get saved again
+	// (see Main.storeBoard)
+	public transient boolean modified;
+	
+	// if set, findBest, evaluate and allKnownWords add what they did to it (see Stats)
+	public transient Stats stats;
+	
+	// if set, findBest and allKnownWords answer from it what was asked before, and
+	// keep their new answers in it (see ResultCache)
+	public transient ResultCache cache;
+	
+	// if set, play, load, toggleBlank and undo add what they did to it, so the game's
+	// file is up to date when they return (see Journal). copies don't get it
+	public transient Journal journal;
+	
+	// bonus squares, letter values and bingo rules, shared with other boards
+	private transient Rules rules;
+	private transient int size;
+	private transient int[] letterValues;
+	private transient int bingoCount;
+	private transient int bingoBonus;
+	
+	// the tiles on the board (ie, the state of the game), per square
+	private transient byte[] grid;
+	private transient byte[] flags;
+	
+	// cached cross checks for moves along rows and along columns (see crossCheck),
+	// kept up to date by play/load/undo/toggleBlank through tileChanged
+	private transient int[][] rowChecks, colChecks;
+	
+	// sum of the letter values in the perpendicular word through each empty tile,
+	// or -1 when there is no perpendicular word (same layout as the cross checks)
+	private transient int[][] rowCrossScores, colCrossScores;
+	
+	// what searchFile needs to know about each row and column, apart from the rack,
+	// built on first use. updateCrossCheck throws away the ones through a square whose 
+	// cross check changes, which covers every file that a new, removed or changed tile
+	// can make a difference to, so after a play only a few files are built again
+	private transient Line[] rowLines, colLines;
 	
 	// what turn we are on
-	private int turn;
+	private transient int turn;
 	
 	// be noisy on stdout
 	// (Some functions have commented out tracing on System.err, these were 
 	// development-time tracing for debugging)
 	private transient boolean noisy;
 	
+	// the fields of boards saved with Java serialization (see readObject)
+	private static final ObjectStreamField[] serialPersistentFields = {
+		new ObjectStreamField("bingoCount", int.class),
+		new ObjectStreamField("bingoBonus", int.class),
+		new ObjectStreamField("tiles", Tile[][].class),
+		new ObjectStreamField("letterValues", int[].class),
+		new ObjectStreamField("turn", int.class),
+	};
+	
 	// constructor
-	public Board(int size) {
-		tiles = new Tile[size][size];
-		for (int row = 0; row < size; row++) {
-			for (int col = 0; col < size; col++) {
-				tiles[row][col] = new Tile(row,col);
-			}
+	public Board(Rules rules) {
+		setRules(rules);
+		grid = new byte[size * size];
+		flags = new byte[size * size];
+		Arrays.fill(grid, (byte) Tile.Empty);
+		turn = 0;
+	}
+	
+	private void setRules(Rules rules) {
+		this.rules = rules;
+		size = rules.size;
+		letterValues = rules.letterValues;
+		bingoCount = rules.bingoCount;
+		bingoBonus = rules.bingoBonus;
+	}
+	
+	public Rules rules() {
+		return rules;
+	}
+	
+	// 0-based indexes
+	private char letter(int row, int col) {
+		return (char) grid[row * size + col];
+	}
+	
+	// 0-based indexes
+	// the tile on row,col: 0 to 25 for 'a' to 'z', 26 more than that for a blank, or 
+	// -1 if the square is empty
+	public int tile(int row, int col) {
+		if (letter(row, col) == Tile.Empty) return -1;
+		return letter(row, col) - 'a' + (isBlank(row, col) ? 26 : 0);
+	}
+	
+	// a Zobrist hash of everything a search depends on: the rules, the tiles and blanks
+	// on each square, and whether it's the first move (when only the center is open). 
+	// used to key answers in the cache
+	public long hash() {
+		long hash = mix(rules.id);
+		if (turn == 0) hash ^= mix(-1);
+		for (int i = 0; i < grid.length; i++) {
+			if (grid[i] == Tile.Empty) continue;
+			int tile = grid[i] - 'a' + ((flags[i] & BLANK) != 0 ? 26 : 0);
+			hash ^= mix(1 + i * 52 + tile);
+		}
+		return hash;
+	}
+	
+	// the random number for a square and tile, made up on the spot instead of kept in
+	// a table (this is the finalizer of SplitMix64)
+	private static long mix(long x) {
+		x = (x + 0x9E3779B97F4A7C15L) * 0xBF58476D1CE4E5B9L;
+		x = (x ^ (x >>> 27)) * 0x94D049BB133111EBL;
+		return x ^ (x >>> 31);
+	}
+	
+	private boolean isBlank(int row, int col) {
+		return (flags[row * size + col] & BLANK) != 0;
+	}
+	
+	private boolean isFresh(int row, int col) {
+		return (flags[row * size + col] & FRESH) != 0;
+	}
+	
+	private int letterBonus(int row, int col) {
+		return rules.letterBonus[row * size + col];
+	}
+	
+	private int wordBonus(int row, int col) {
+		return rules.wordBonus[row * size + col];
+	}
+	
+	private void set(int row, int col, char letter, int flags) {
+		grid[row * size + col] = (byte) letter;
+		this.flags[row * size + col] = (byte) flags;
+	}
+	
+	// number of bytes write() will need
+	public int byteSize() {
+		return 4 + 3 + 4 + size * size * 2;
+	}
+	
+	public void write(ByteBuffer out) {
+		out.putInt(MAGIC);
+		out.put((byte) VERSION);
+		out.put((byte) rules.id);
+		out.put((byte) size);
+		out.putInt(turn);
+		out.put(grid);
+		out.put(flags);
+	}
+	
+	// is 'in' (from its position) a board saved by write()?
+	public static boolean isSaved(ByteBuffer in) {
+		return in.remaining() >= 4 && in.getInt(in.position()) == MAGIC;
+	}
+	
+	// reads a board saved by write()
+	public static Board read(ByteBuffer in) throws IOException {
+		if (in.getInt() != MAGIC || in.get() != VERSION) {
+			throw new IOException("not a saved board (or the wrong version)");
+		}
+		Rules rules = Rules.byId(in.get());
+		int size = in.get();
+		if (rules == null || rules.size != size) {
+			throw new IOException("unknown rules for a saved board");
 		}
 		
-		letterValues = null;
-		turn = 0;
-		bingoCount = -1;
-		bingoBonus = 0;
+		Board b = new Board(rules);
+		b.turn = in.getInt();
+		in.get(b.grid);
+		in.get(b.flags);
+		return b;
+	}
+	
+	// a board in the same state as this one, that can be changed without changing 
+	// this one (the dictionary and rules are shared). the cross checks are copied 
+	// too, so searching the copy doesn't have to build them again
+	public synchronized Board copy() {
+		crossChecks("row");
 		
-		wordsWithFriends();
+		Board b = new Board(rules);
+		b.dictionary = dictionary;
+		b.turn = turn;
+		System.arraycopy(grid, 0, b.grid, 0, grid.length);
+		System.arraycopy(flags, 0, b.flags, 0, flags.length);
+		b.rowChecks = copy(rowChecks);
+		b.colChecks = copy(colChecks);
+		b.rowCrossScores = copy(rowCrossScores);
+		b.colCrossScores = copy(colCrossScores);
+		b.rowLines = rowLines.clone();
+		b.colLines = colLines.clone();
+		return b;
+	}
+	
+	// a copy of this board that any number of threads can read at once (find, words,
+	// print...). what reading would otherwise build on first use, the cross checks and
+	// the files (see Line), is built already, so nothing writes to it. it answers from
+	// and into the same cache as this one (see Sessions)
+	public Board snapshot() {
+		Board b = copy();
+		b.cache = cache;
+		Stats counts = new Stats();
+		for (int i = 0; i < size; i++) {
+			b.line("row", i, counts);
+			b.line("col", i, counts);
+		}
+		return b;
 	}
 
-	// setup board with WWF rules
-	private void wordsWithFriends() {
-		letterValues = new int[] { 1, 4, 4, 2, 1, 4, 3, 3, 1, 10, 5, 2, 4, 2, 1, 4, 10, 1, 1, 1, 2, 5, 4, 8, 3, 10 };
-		bingoCount = 7;
-		bingoBonus = 35;
+	private static int[][] copy(int[][] a) {
+		int[][] b = new int[a.length][];
+		for (int i = 0; i < a.length; i++) {
+			b[i] = a[i].clone();
+		}
+		return b;
+	}
+	
+	// reads a board saved with Java serialization, when it was a Tile[][]. only WWF 
+	// boards were ever saved that way
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		ObjectInputStream.GetField fields = in.readFields();
+		Tile[][] tiles = (Tile[][]) fields.get("tiles", null);
+		
+		setRules(Rules.WORDS_WITH_FRIENDS);
+		grid = new byte[size * size];
+		flags = new byte[size * size];
+		for (int row = 0; row < size; row++) {
+			for (int col = 0; col < size; col++) {
+				Tile t = tiles[row][col];
+				set(row, col, t.letter, (t.fresh ? FRESH : 0) | (t.blank ? BLANK : 0));
+			}
+		}
+		turn = fields.get("turn", 0);
 		
-		wordsWithFriendsQuadrant(1,1);
-		wordsWithFriendsQuadrant(-1,1);
-		wordsWithFriendsQuadrant(1,-1);
-		wordsWithFriendsQuadrant(-1,-1);
+		// not 'modified': it's saved in the new format by the next command that changes
+		// it, commands that only read it leave the file as it is
 	}
-
-	// helper function, assigns bonus tile values in a quadrant of the board
-	private void wordsWithFriendsQuadrant(int x, int y) {
-		cartesianIndex(4*x, 0).wordBonus = 2;
-		cartesianIndex(3*x, 1*y).letterBonus = 2;
-		cartesianIndex(7*x, 1*y).letterBonus = 3;
-		cartesianIndex(2*x, 2*y).letterBonus = 3;
-		cartesianIndex(6*x, 2*y).wordBonus = 2;
-		cartesianIndex(1*x, 3*y).letterBonus = 2;
-		cartesianIndex(5*x, 3*y).letterBonus = 2;
-		cartesianIndex(4*x, 4*y).letterBonus = 3;
-		cartesianIndex(7*x, 4*y).wordBonus = 3;
-		cartesianIndex(3*x, 5*y).letterBonus = 2;
-		cartesianIndex(6*x, 5*y).letterBonus = 2;
-		cartesianIndex(2*x, 6*y).wordBonus = 2;
-		cartesianIndex(5*x, 6*y).letterBonus = 2;
-		cartesianIndex(1*x, 7*y).letterBonus = 3;
-		cartesianIndex(4*x, 7*y).wordBonus = 3;
-		cartesianIndex(0, 4*y).wordBonus = 2;
-	}
-	
-	// access a tile based on Cartesian geometry, with {0,0} in the center of the board
-	private Tile cartesianIndex(int x, int y) {
-		int center = tiles.length / 2;
-		int row = center + y;
-		int col = center + x;
-		
-		return tiles[row][col];
+	
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		throw new NotSerializableException("boards are saved with Board.write");
 	}
 	
 	// "letters" or "bonuses", defaults to "letters"
@@ -105,22 +298,21 @@ public class Board implements Serializable {
 	// dumping method
 	private String toString(String which) {
 		String b = "";
-		int size = tiles.length;
 		
 		if (which.equals("bonuses")) {
 			// print out the bonus tiles on the board
 			for (int row = 0; row < size; row++) {
 				for (int col = 0; col < size; col++) {
-					if (tiles[row][col].letterBonus == 2) {
+					if (letterBonus(row, col) == 2) {
 						b += "DL";
 					}
-					else if (tiles[row][col].letterBonus == 3) {
+					else if (letterBonus(row, col) == 3) {
 						b += "TL";
 					}
-					else if (tiles[row][col].wordBonus == 2) {
+					else if (wordBonus(row, col) == 2) {
 						b += "DW";
 					}
-					else if (tiles[row][col].wordBonus == 3) {
+					else if (wordBonus(row, col) == 3) {
 						b += "TW";
 					}
 					else {
@@ -139,9 +331,9 @@ public class Board implements Serializable {
 		else if (which.equals("letters")) {
 			for (int row = 0; row < size; row++) {
 				for (int col = 0; col < size; col++) {
-					Tile t = tiles[row][col];
-					if (t.letter == Tile.Empty) {
-						if (t.letterBonus > 1 || t.wordBonus > 1) {
+					char letter = letter(row, col);
+					if (letter == Tile.Empty) {
+						if (letterBonus(row, col) > 1 || wordBonus(row, col) > 1) {
 							b += "# ";
 						}
 						else {
@@ -149,8 +341,8 @@ public class Board implements Serializable {
 						}
 					}
 					else {
-						b += t.fresh ? Character.toUpperCase(t.letter) : t.letter;
-						b += t.blank ? "*" : " ";
+						b += isFresh(row, col) ? Character.toUpperCase(letter) : letter;
+						b += isBlank(row, col) ? "*" : " ";
 					}
 					
 					if (col == size - 1) {
@@ -170,7 +362,6 @@ public class Board implements Serializable {
 	// 0 if the play is invalid
 	// WARNING: row and col are 1-based indexes NOT 0-based!!!
 	public int play(int row, int col, String word, String dir) {
-		int score = 0;
 		ArrayList<Character> letters = toArray(word);
 		Word w = new Word(word.replaceAll("\\*", "").toLowerCase());
 		
@@ -179,211 +370,402 @@ public class Board implements Serializable {
 				w.blankLetters().add(i-1);
 			}
 		}
+		w.setLocation(row-1, col-1, dir);
 
-		if (fits(row, col, w, dir)) {
-			score = score(true, null);
+		return play(w);
+	}
+	
+	// 0-based location on 'w'
+	// plays 'w' if it's valid, returns its score (0 means it wasn't played)
+	public int play(Word w) {
+		int score = evaluate(w);
+		if (score > 0) {
+			commit(w);
+			if (journal != null) journal.played(this, w);
 		}
-		clearPending();
 		
 		return score;
 	}
 	
-	// this function does two things:
-	// 1. calculates the score of the current play (based on the "pending" flag on each tile)
-	// 2. if "commit" is true, then:
-	// 		a. clear the old "fresh" tiles from the previous turn
-	// 		b. increment the "turn" counter by 1
-	// 		c. clear all "pending" flags
-	// 3. if "word" is non-null, then:
-	//   	a. assign the score to it
-	//      b. assign the bonuses that were hit
-	//      c. assign any secondary words that are created by 'word'
-	private int score(boolean commit, Word word) {
-		// accumulator
-		int score = 0;
+	// plays a move from best(), returns its score
+	public int play(long move) {
+		return play(word(move));
+	}
+	
+	// 0-based location on 'w'
+	// the tiles that 'w' would put on the board, ie take off the player's rack
+	public Rack tiles(Word w) {
+		Rack used = new Rack();
+		int dr = w.dir.equals("col") ? 1 : 0;
+		int dc = w.dir.equals("row") ? 1 : 0;
+		for (int i = 0; i < w.word.length(); i++) {
+			if (letter(w.row + dr * i, w.col + dc * i) != Tile.Empty) continue;
+			used.add(w.blankLetters().contains(i) ? Tile.Blank : w.word.charAt(i));
+		}
+		return used;
+	}
+	
+	// puts the letters of 'w' (already checked by evaluate) on the board:
+	// 1. clear the old "fresh" tiles from the previous turn
+	// 2. place the new tiles, which become the "fresh" ones
+	// 3. increment the "turn" counter by 1
+	// (Journal plays moves it has again with it, without checking them)
+	void commit(Word w) {
+		for (int i = 0; i < flags.length; i++) {
+			flags[i] &= ~FRESH;
+		}
 		
-		// if the bingo threshold is hit with pending letters, they get the bingo bonus
-		int pendingCount = 0; 
-
-		// buffers
-		ArrayList<Tile> rowBuffer = new ArrayList<Tile>();
-		ArrayList<Tile> colBuffer = new ArrayList<Tile>();
-		
-		for (int i = 0; i < tiles.length; i++) {
-			rowBuffer.clear();
-			colBuffer.clear();
-			for (int j = 0; j < tiles.length; j++) {
-				// buffer up row i
-				if (tiles[i][j].letter == Tile.Empty) {
-					score += scoreWord(rowBuffer, word, "row");
-					//System.err.printf("hit empty on row: %d\n", score);
-					rowBuffer.clear();
-				}
-				else {
-					rowBuffer.add(tiles[i][j]);
-				}
-				
-				// buffer up column i
-				if (tiles[j][i].letter == Tile.Empty){
-					score += scoreWord(colBuffer, word, "col");
-					//System.err.printf("hit empty on col: %d\n", score);
-					colBuffer.clear();
-				}
-				else {
-					colBuffer.add(tiles[j][i]);
-				}
-				
-				// count pending
-				if (tiles[i][j].pending) pendingCount++;
-				
-				// update state?
-				if (commit) {
-					// "pending" will have to wait until the end of this function, since
-					// scoreWord will use it
-					tiles[i][j].fresh = tiles[i][j].pending ? true : false;
+		int dr = w.dir.equals("col") ? 1 : 0;
+		int dc = w.dir.equals("row") ? 1 : 0;
+		boolean[] placed = new boolean[w.word.length()];
+		for (int i = 0; i < w.word.length(); i++) {
+			int row = w.row + dr * i;
+			int col = w.col + dc * i;
+			if (letter(row, col) == Tile.Empty) {
+				set(row, col, w.word.charAt(i), FRESH | (w.blankLetters().contains(i) ? BLANK : 0));
+				placed[i] = true;
+			}
+		}
+		if (turn == 0 && rowLines != null) {
+			// the center isn't the only anchor any more
+			Arrays.fill(rowLines, null);
+			Arrays.fill(colLines, null);
+		}
+		turn++;
+		modified = true;
+		
+		for (int i = 0; i < placed.length; i++) {
+			if (placed[i]) tileChanged(w.row + dr * i, w.col + dc * i);
+		}
+	}
+	
+	// 0-based location on 'w'
+	// checks that 'w' is a valid play at its location, and scores it, as if its letters
+	// were on the board. nothing on the board is changed, so any number of threads can 
+	// evaluate plays at the same time. this checks:
+	// - geometry (fits on the board, matches the letters already there)
+	// - touches existing played tile
+	// - all words are found in the dictionary
+	// and if the play is valid, then:
+	// - assigns the score to 'w' (which is also returned, 0 means invalid)
+	// - assigns the bonuses that were hit
+	// - assigns any secondary words that are created by 'w'
+	public int evaluate(Word w) {
+		Stats stats = this.stats;
+		if (stats != null) stats.evaluated++;
+		if (!w.dir.equals("row") && !w.dir.equals("col")) {
+			if (noisy) System.out.println("bad dir: " + w.dir);
+			if (stats != null) stats.badGeometry++;
+			return 0;
+		}
+		
+		int dr = w.dir.equals("col") ? 1 : 0;
+		int dc = w.dir.equals("row") ? 1 : 0;
+		int length = w.word.length();
+		int endRow = w.row + dr * (length - 1);
+		int endCol = w.col + dc * (length - 1);
+		
+		if (w.row < 0 || w.col < 0 || endRow >= size || endCol >= size) {
+			if (noisy) System.out.println("evaluate: out of bounds");
+			if (stats != null) stats.badGeometry++;
+			return 0;
+		}
+		
+		// the letters have to fit with what's on the board, and the new ones have to
+		// make valid words across 'dir' (the cached cross checks)
+		int[][] checks = crossChecks(w.dir);
+		int placed = 0;
+		boolean touchesExisting = false;
+		for (int i = 0; i < length; i++) {
+			int row = w.row + dr * i;
+			int col = w.col + dc * i;
+			char c = w.word.charAt(i);
+			
+			if (letter(row, col) == Tile.Empty) {
+				if (c < 'a' || c > 'z' || (checks[row][col] & (1 << (c - 'a'))) == 0) {
+					if (noisy) System.out.printf("evaluate: '%c' doesn't form a valid word at %d,%d\n", c, row+1, col+1);
+					if (stats != null) stats.badCrossWord++;
+					return 0;
 				}
+				placed++;
+			}
+			else if (letter(row, col) != c) {
+				if (noisy) System.out.printf("evaluate: couldn't play on (%d,%d), contains %c\n", row+1, col+1, letter(row, col));
+				if (stats != null) stats.badGeometry++;
+				return 0;
 			}
 			
-			score += scoreWord(rowBuffer, word, "row");
-			//System.err.printf("last rowBuffer: %d\n", score);
-			score += scoreWord(colBuffer, word, "col");
-			//System.err.printf("last colBuffer: %d\n", score);
+			if (!touchesExisting) {
+				touchesExisting = validTile(row, col);
+			}
 		}
 		
-		if (pendingCount == bingoCount) {
-			if (noisy) System.out.println("Bingo!");
-			score += bingoBonus;
-			if (word != null) word.bingo();
+		if (placed == 0) {
+			if (noisy) System.out.println("evaluate: no new letters");
+			if (stats != null) stats.noNewLetters++;
+			return 0;
 		}
 		
-		if (commit) { 
-			turn++;
-			clearPending();
+		if (!touchesExisting) {
+			if (noisy) System.out.println("evaluate: word doesn't touch an existing letter");
+			if (stats != null) stats.noAnchor++;
+			return 0;
+		}
+		
+		// the word along 'dir' includes any letters right before or after 'w'
+		int startRow = w.row;
+		int startCol = w.col;
+		while (startRow - dr >= 0 && startCol - dc >= 0 && letter(startRow - dr, startCol - dc) != Tile.Empty) {
+			startRow -= dr;
+			startCol -= dc;
+		}
+		if (stats != null) stats.wordChecks++;
+		if (!checkWord(w, startRow, startCol)) {
+			if (stats != null) stats.badWord++;
+			return 0;
 		}
+		
+		if (stats != null) stats.scores++;
+		return score(w, placed);
+	}
+	
+	// 0-based indexes
+	// the letter on row,col if 'w' was played, Tile.Empty if there isn't one
+	private char letterAt(Word w, int row, int col) {
+		int i = placedIndex(w, row, col);
+		return i >= 0 ? w.word.charAt(i) : letter(row, col);
+	}
+	
+	// 0-based indexes
+	// if 'w' puts a new letter on row,col, returns its index in the word, otherwise -1
+	private int placedIndex(Word w, int row, int col) {
+		if (letter(row, col) != Tile.Empty) return -1;
+		
+		int i;
+		if (w.dir.equals("row")) {
+			if (row != w.row) return -1;
+			i = col - w.col;
+		}
+		else {
+			if (col != w.col) return -1;
+			i = row - w.row;
+		}
+		
+		return i >= 0 && i < w.word.length() ? i : -1;
+	}
 
-		if (word != null) word.score = score;
+	// given a tile (assumed to be the FIRST tile of a word, with 'w' played), this 
+	// function finds the connected tiles, and checks that the resulting word is in 
+	// the dictionary
+	private boolean checkWord(Word w, int row, int col) {
+		Dawg graph = dictionary.graph;
+		int node = Dawg.ROOT;
+		StringBuilder builder = noisy ? new StringBuilder() : null;
+		
+		while (row < size && col < size && node != Dawg.NONE) {
+			char c = letterAt(w, row, col);
+			if (c == Tile.Empty) {
+				break;
+			}
+			if (builder != null) builder.append(c);
+			node = graph.child(node, c - 'a');
+			
+			if (w.dir.equals("row")) {
+				col++;
+			}
+			else {
+				row++;
+			}
+		}
+
+		if (node != Dawg.NONE && graph.terminal(node)) {
+			if (noisy) System.out.printf("checkWord: true %s\n", builder);
+			return true;
+		}
+		
+		if (noisy) System.out.printf("'%s' is not a valid word\n", builder);
+		return false;
+	}
+	
+	// calculates the score of 'w' as if it was played ('placed' is how many new letters
+	// it puts down). only the word along w.dir and the words across it through the new
+	// letters can score, so those are the only ones we look at. the words across use 
+	// the cached cross scores for the letters that are already on the board
+	private int score(Word word, int placed) {
+		word.clearBonuses();
+		boolean across = word.dir.equals("row");
+		int dr = across ? 0 : 1;
+		int dc = across ? 1 : 0;
+		int[][] crossScores = across ? rowCrossScores : colCrossScores;
+		
+		// the word along 'dir' runs from start to end, including letters already played
+		int startRow = word.row;
+		int startCol = word.col;
+		while (startRow - dr >= 0 && startCol - dc >= 0 && letter(startRow - dr, startCol - dc) != Tile.Empty) {
+			startRow -= dr;
+			startCol -= dc;
+		}
+		int endRow = word.row + dr * (word.word.length() - 1);
+		int endCol = word.col + dc * (word.word.length() - 1);
+		while (endRow + dr < size && endCol + dc < size && letter(endRow + dr, endCol + dc) != Tile.Empty) {
+			endRow += dr;
+			endCol += dc;
+		}
+		
+		// bonuses get added to 'word' in the order that a scan of the board finds the 
+		// words (row i and then column i, for i = 0, 1, ...), so sort them that way.
+		// each entry is the sort key (see scanOrder) in the high bits, and which word it
+		// is in the low 8 bits: the index in 'word' of the new letter that the word 
+		// across goes through, or 255 for the word along 'dir'
+		long[] words = new long[word.word.length() + 1];
+		int count = 0;
+		words[count++] = ((long) scanOrder(across, startRow, startCol, endRow, endCol) << 8) | 255;
+		
+		for (int i = 0; i < word.word.length(); i++) {
+			int r = word.row + dr * i;
+			int c = word.col + dc * i;
+			if (letter(r, c) != Tile.Empty || crossScores[r][c] < 0) continue;
+			
+			// find the end of the word across
+			int er = r;
+			int ec = c;
+			while (er + dc < size && ec + dr < size && letter(er + dc, ec + dr) != Tile.Empty) {
+				er += dc;
+				ec += dr;
+			}
+			words[count++] = ((long) scanOrder(!across, r, c, er, ec) << 8) | i;
+		}
+		Arrays.sort(words, 0, count);
+		
+		// accumulator
+		int score = 0;
+		for (int k = 0; k < count; k++) {
+			int i = (int) (words[k] & 255);
+			if (i == 255) {
+				score += scoreWord(word, startRow, startCol, endRow, endCol);
+			}
+			else {
+				score += scoreCrossWord(word, i, crossScores[word.row + dr * i][word.col + dc * i]);
+			}
+		}
+		
+		// if the bingo threshold is hit with new letters, they get the bingo bonus
+		if (placed == bingoCount) {
+			if (noisy) System.out.println("Bingo!");
+			score += bingoBonus;
+			word.bingo();
+		}
+		
+		word.score = score;
 		return score;
 	}
+	
+	// 0-based indexes
+	// where a full scan of the board would finish the word from startRow,startCol to 
+	// endRow,endCol: rows and columns are scanned together (row i, then column i), and
+	// a word is finished on the tile after its last letter, or at the end of the line
+	private int scanOrder(boolean across, int startRow, int startCol, int endRow, int endCol) {
+		if (across) {
+			return (startRow * (size + 1) + endCol + 1) * 2;
+		}
+		else {
+			return (startCol * (size + 1) + endRow + 1) * 2 + 1;
+		}
+	}
 
-	// 0-based indexes on 'row' and 'col'
-	// This method does the scoring work, it operates on a buffer of Tile objects
-	private int scoreWord(ArrayList<Tile> tiles, Word w, String orientation) {
-		if (tiles.size() <= 1) return 0;
+	// 0-based indexes
+	// scores the word along w.dir, which runs from startRow,startCol to endRow,endCol 
+	// and includes the letters of 'w'
+	private int scoreWord(Word w, int startRow, int startCol, int endRow, int endCol) {
+		if (startRow == endRow && startCol == endCol) return 0;
 		
+		int dr = w.dir.equals("col") ? 1 : 0;
+		int dc = w.dir.equals("row") ? 1 : 0;
 		int wordBonus = 1;
-		boolean counts = false;
-		Word thisWord = new Word("", tiles.get(0).row, tiles.get(0).col, orientation);
-		
-		//System.err.printf("scoreWord: %d,%d %s %s\n", tiles.get(0).row, tiles.get(0).col, tiles, orientation);
+		Word thisWord = new Word("", startRow, startCol, w.dir);
+		StringBuilder letters = new StringBuilder();
 		
-		for (Tile t : tiles) {
-			thisWord.word += t.letter;
-			//System.err.printf("scoreWord: tile %d,%d %c %b %b\n", t.row, t.col, t.letter, t.pending, t.blank);
-			if (t.pending)  {
-				// this word counts...
-				counts = true;
+		for (int r = startRow, c = startCol; r <= endRow && c <= endCol; r += dr, c += dc) {
+			if (letter(r, c) == Tile.Empty) {
+				// one of ours
+				int i = (r - w.row) + (c - w.col);
+				char letter = w.word.charAt(i);
+				letters.append(letter);
 
-				if (t.blank) {
-					// ...but this tile doesn't score anything
+				if (w.blankLetters().contains(i)) {
+					// this tile doesn't score anything
 				}
 				else {
-					// ...and this word scores points!
-					//System.err.printf("scoring letter: %c\n", t.letter);
-					wordBonus *= t.wordBonus;
-					thisWord.addBonuses(t.wordBonus, t.letterBonus);
-					if (w != null) w.addBonuses(t.wordBonus, t.letterBonus);
-					thisWord.score += letterValues[t.letter - 'a'] * t.letterBonus;
+					wordBonus *= wordBonus(r, c);
+					thisWord.addBonuses(wordBonus(r, c), letterBonus(r, c));
+					w.addBonuses(wordBonus(r, c), letterBonus(r, c));
+					thisWord.score += letterValues[letter - 'a'] * letterBonus(r, c);
 				}
 			}
 			else {
-				// if the tile isn't pending, it's just worth the value of the letter, 
+				// if the tile was already played, it's just worth the value of the letter, 
 				// UNLESS it's blank, in which case it is worth jack
-				//System.err.printf("non-scoring letter: %c\n", t.letter);
-				if (!t.blank) thisWord.score += letterValues[t.letter - 'a'];
+				letters.append(letter(r, c));
+				if (!isBlank(r, c)) thisWord.score += letterValues[letter(r, c) - 'a'];
 			}
 		}
 
-		if (counts)	thisWord.score *= wordBonus;
+		thisWord.score *= wordBonus;
+		thisWord.word = letters.toString();
 
-		if (counts && w != null && !thisWord.word.equals(w.word)) {
+		if (!thisWord.word.equals(w.word)) {
 			w.attach(thisWord);
 		}
 		
-		//if (counts) System.err.printf("scoreWord: %s %s\n", thisWord, ( counts ? "true" : "false"));
-		return counts ? thisWord.score : 0;
+		return thisWord.score;
 	}
 	
-	// WARNING: startRow and startCol are 1-based indexes not 0-based!!!
-	// checks that the given word is a valid play at startRow,startCol in the direction dir
-	// - geometry (fits on the board)
-	// - touches existing played tile
-	// - all words are found in the dictionary
-	// SIDE EFFECT: sets pending on the word that is played, in prep for calling score()
-	private boolean fits(int startRow, int startCol, Word word, String dir) {
-		//System.err.printf("fits: %d,%d %s %s\n", startRow, startCol, dir, word.word);
-		// break the word into its characters
-		ArrayList<Character> letters = toArray(word.word);
-
-		// as we're placing letters, we'll also check that we touch an existing letter
-		boolean touchesExisting = false;
-		int end = letters.size();
-		for (int i = 0; i < end; i++) {
-			int row = startRow - 1 + (dir.equals("col") ? i : 0);
-			int col = startCol - 1 + (dir.equals("row") ? i : 0);
-
-			if (row < 0 || row >= tiles.length) {
-				if (noisy) System.out.println("row is out of bounds: " + (row + 1));
-				break;
-			}
-			if (col < 0 || col >= tiles.length) {
-				if (noisy) System.out.println("column is out of bounds: " + (col + 1));
-				break;
-			}
-			
-			//System.err.printf("checking %d,%d\n", row+1, col+1);
-			
-			if (tiles[row][col].letter == Tile.Empty) {
-				tiles[row][col].letter = letters.remove(0);
-				tiles[row][col].pending = true;
-				if (noisy) System.out.printf("fits: %c on empty\n", tiles[row][col].letter);
-
-				// check if we just placed a blank tile
-				if (word.blankLetters().contains(i)) {
-					tiles[row][col].blank = true;
-				}
+	// scores the word across w.dir through the new letter at index 'i' of 'w'. 
+	// 'crossScore' is the value of the letters already on the board in that word
+	private int scoreCrossWord(Word w, int i, int crossScore) {
+		String orientation = w.dir.equals("row") ? "col" : "row";
+		int dr = orientation.equals("col") ? 1 : 0;
+		int dc = orientation.equals("row") ? 1 : 0;
+		int row = w.row + dc * i;
+		int col = w.col + dr * i;
+		char letter = w.word.charAt(i);
+		
+		// find where the word starts, and spell it out
+		int startRow = row;
+		int startCol = col;
+		while (startRow - dr >= 0 && startCol - dc >= 0 && letter(startRow - dr, startCol - dc) != Tile.Empty) {
+			startRow -= dr;
+			startCol -= dc;
+		}
+		StringBuilder letters = new StringBuilder();
+		for (int r = startRow, c = startCol; r < size && c < size; r += dr, c += dc) {
+			if (r == row && c == col) {
+				letters.append(letter);
 			}
-			else if (tiles[row][col].letter == letters.get(0)) {
-				if (noisy) System.out.printf("fits: %c exists\n", tiles[row][col].letter);
-				letters.remove(0);
+			else if (letter(r, c) != Tile.Empty) {
+				letters.append(letter(r, c));
 			}
 			else {
-				if (noisy) System.out.printf("fits: couldn't play on (%d,%d), contains %c\n", row+1, col+1, tiles[row][col].letter);
 				break;
 			}
-			
-			if (!touchesExisting) {
-				touchesExisting = validTile(row, col);
-			}
-		}
-
-		if (!letters.isEmpty()) {
-			if (noisy) System.out.println("fits: couldn't use all letters: " + letters.toString());
-			return false;
 		}
 		
-		if (!touchesExisting) {
-			if (noisy) System.out.println("fits: word doesn't touch an existing letter");
-			return false;
+		Word thisWord = new Word(letters.toString(), startRow, startCol, orientation);
+		if (w.blankLetters().contains(i)) {
+			// the new tile doesn't score anything, or double anything
+			thisWord.score = crossScore;
+		}
+		else {
+			thisWord.addBonuses(wordBonus(row, col), letterBonus(row, col));
+			w.addBonuses(wordBonus(row, col), letterBonus(row, col));
+			thisWord.score = (crossScore + letterValues[letter - 'a'] * letterBonus(row, col)) * wordBonus(row, col);
 		}
 		
-		if (!checkWords()) {
-			if (noisy) System.out.println("fits: checkWords didn't pass");
-			return false;
+		if (!thisWord.word.equals(w.word)) {
+			w.attach(thisWord);
 		}
 		
-		// at this point, the word is a valid play
-		//System.err.println("fits: true");
-		return true;
+		return thisWord.score;
 	}
 	
 	// 0-based indexes
@@ -391,21 +773,20 @@ public class Board implements Serializable {
 	private boolean validTile(int row, int col) {
 		if (turn == 0) {
 			// there is only 1 valid tile to play on turn 0, that is the center
-            //return true;
-			int center = tiles.length / 2;
+			int center = size / 2;
 			return row == center && col == center;
 		}
 		else {
-			if (row - 1 >= 0 && tiles[row-1][col].letter != Tile.Empty && tiles[row-1][col].pending == false) {
+			if (row - 1 >= 0 && letter(row-1, col) != Tile.Empty) {
 				return true;
 			}
-			if (row + 1 < tiles.length && tiles[row+1][col].letter != Tile.Empty && tiles[row+1][col].pending == false) {
+			if (row + 1 < size && letter(row+1, col) != Tile.Empty) {
 				return true;
 			}
-			if (col - 1 >= 0 && tiles[row][col-1].letter != Tile.Empty && tiles[row][col-1].pending == false) {
+			if (col - 1 >= 0 && letter(row, col-1) != Tile.Empty) {
 				return true;
 			}
-			if (col + 1 < tiles.length && tiles[row][col+1].letter != Tile.Empty && tiles[row][col+1].pending == false) {
+			if (col + 1 < size && letter(row, col+1) != Tile.Empty) {
 				return true;
 			}
 		}
@@ -414,355 +795,624 @@ public class Board implements Serializable {
 		return false;
 	}
 	
-	// set the "pending" flag on all tiles to false
-	private void clearPending() {
-		for (int i = 0; i < tiles.length; i++) {
-			for (int j = 0; j < tiles.length; j++) {
-				if (tiles[i][j].pending && !tiles[i][j].fresh) {
-					tiles[i][j].letter = Tile.Empty;
-				}
-				tiles[i][j].pending = false;
-			}
-		}
+	// finds the best place to play a given word, and prints the top <limit> 
+	// candidates to System.out (or all of them if <limit> is 0)
+	public void findBest(String letters, int limit) {
+		findBest(letters, limit, 0, System.out);
 	}
 	
-	// set the "blank" flag on pending all tiles to false
-	private void clearBlank() {
-		for (int i = 0; i < tiles.length; i++) {
-			for (int j = 0; j < tiles.length; j++) {
-				if (tiles[i][j].pending) {
-					tiles[i][j].blank = false;
-				}
-			}
-		}
+	// same as findBest(letters, limit), printing the candidates to 'out'
+	public void findBest(String letters, int limit, PrintStream out) {
+		findBest(letters, limit, 0, out);
 	}
 	
-	
-	// finds all words that are based on pending tiles, and checks that they exist
-	// TODO: checkWord gets called a lot of repeated times, room for optimization
-	private boolean checkWords() {
-		for (int i = 0; i < tiles.length; i++) {
-			for (int j = 0; j < tiles.length; j++) {
-				if (tiles[i][j].pending){
-					// keep going left until we run out of letters, and check that word
-					int col = j;
-					while (col >= 0 && tiles[i][col].letter != Tile.Empty) {
-						col--;
-					}
-					if (!checkWord(i, col+1, "row")) {
-						return false;
-					}
-					
-					// keep going up until we run out of letters, and check that word
-					int row = i;
-					while (row >= 0 && tiles[row][j].letter != Tile.Empty) {
-						row--;
-					}
-					if (!checkWord(row+1, j, "col")) {
-						return false;
-					}
-				}
+	// same as findBest(letters, limit, out), but if 'millis' is more than 0 the search
+	// stops after that long, with the best moves it found until then (see best), and 
+	// says on System.err whether it got to search everything
+	public void findBest(String letters, int limit, long millis, PrintStream out) {
+		// 1. for each row and column, find the anchor squares (open squares next to
+		//    a played tile) and which letters each open square allows
+		// 2. generate every placement of our letters that covers an anchor and 
+		//    spells a word (see MoveGenerator.java)
+		// 3. score the placements, keeping the best <limit> of them. once we have 
+		//    that many, anchors whose moves can't beat the worst of them are skipped
+		// 4. print them, best first
+		// what each step did goes to 'stats' (if set) and to a JFR event (see Stats)
+		Stats.FindEvent event = new Stats.FindEvent();
+		event.begin();
+		Stats counts = new Stats();
+
+		// downcase the incoming letters
+		letters = letters.toLowerCase();
+		Rack rack = new Rack();
+		for (char c : letters.toCharArray()) {
+			if (!rack.add(c)) {
+				System.err.printf("invalid character in tile set: %c\n", c);
+				return;
 			}
 		}
 		
-		return true;
-	}
-
-	// given a tile (assumed to be the FIRST tile of a word), this function finds the
-	// connected tiles, and checks that the resulting word is in the dictionary
-	private boolean checkWord(int row, int col, String dir) {
-		ArrayList<Character> letters = new ArrayList<Character>();
-		StringBuilder builder = new StringBuilder();
-		
-		//System.err.printf("checkWord: %d %d %s\n", row, col, dir);
+		// asked before? only complete answers are kept, so that one searched everything
+		String key = null;
+		String found = null;
+		if (cache != null) {
+			key = String.format("find %016x %s %d", hash(), rack, limit);
+			found = (String) cache.get(key);
+		}
 		
-		while (true) {
-			if (row < tiles.length && col < tiles.length && tiles[row][col].letter != Tile.Empty) {
-				letters.add(tiles[row][col].letter);
-				builder.append(tiles[row][col].letter);
-			}
-			else {
-				break;
+		boolean exhaustive = true;
+		if (found != null) {
+			long output = System.nanoTime();
+			out.print(found);
+			for (int i = found.indexOf('\n'); i >= 0; i = found.indexOf('\n', i + 1)) {
+				counts.moves++;
 			}
+			counts.cached = 1;
+			counts.outputNanos = System.nanoTime() - output;
+		}
+		else {
+			MoveList moves = best(rack, limit, millis, counts);
+			exhaustive = moves.exhaustive;
+			long output = System.nanoTime();
+			if (noisy) System.out.printf("moves: %d\n", moves.size());
 			
-			if (dir.equals("row")) {
-				col++;
+			// and print what we found!
+			StringBuilder printed = cache != null ? new StringBuilder() : null;
+			for (int i = 0; i < moves.size(); i++) {
+				String line = word(moves.get(i)).toString();
+				out.println(line);
+				if (printed != null) printed.append(line).append(System.lineSeparator());
 			}
-			else if (dir.equals("col")) {
-				row++;
+			if (cache != null && moves.exhaustive) {
+				cache.put(key, printed.toString(), printed.length() * 2);
+			}
+			counts.moves = moves.size();
+			counts.outputNanos = System.nanoTime() - output;
+		}
+		
+		if (millis > 0) {
+			if (found != null) {
+				System.err.printf("answered from the cache, which searched everything (%d ms deadline)\n", millis);
+			}
+			else if (exhaustive) {
+				System.err.printf("searched everything within the deadline (%d ms)\n", millis);
 			}
 			else {
-				if (noisy) System.out.println("bad dir: " + dir);
-				return false;
+				System.err.printf("stopped at the deadline (%d ms): %d of %d anchors weren't searched to the end\n",
+						millis, counts.anchorsStopped, counts.anchors);
 			}
 		}
+		
+		if (stats != null) stats.add(counts);
+		event.end();
+		if (event.shouldCommit()) {
+			event.rack = letters;
+			event.limit = limit;
+			event.files = counts.files;
+			event.filesSkipped = counts.filesSkipped;
+			event.anchors = counts.anchors;
+			event.anchorsSkipped = counts.anchorsSkipped;
+			event.exhaustive = exhaustive;
+			event.cached = found != null;
+			event.edges = counts.edges;
+			event.candidates = counts.candidates;
+			event.moves = counts.moves;
+			event.setup = counts.setupNanos;
+			event.search = counts.searchNanos;
+			event.output = counts.outputNanos;
+			event.commit();
+		}
+	}
+	
+	// the best <limit> moves for 'rack' (or all of them if <limit> is 0), best first,
+	// packed into longs (see MoveList and word). this is findBest without the printing,
+	// for code that plays moves out (see Simulator)
+	public MoveList best(Rack rack, int limit) {
+		return best(rack, limit, 0, new Stats());
+	}
+	
+	// same as best(rack, limit), but if 'millis' is more than 0 the search stops after
+	// that long, and the moves are the best it found until then. the most promising 
+	// rows, columns and anchors are searched first, so those are the ones it gets to.
+	// MoveList.exhaustive says whether it searched everything
+	public MoveList best(Rack rack, int limit, long millis) {
+		return best(rack, limit, millis, new Stats());
+	}
+	
+	// steps 1 to 3 of findBest, adding what they did to 'counts'
+	private MoveList best(Rack rack, int limit, long millis, Stats counts) {
+		long start = System.nanoTime();
+		long deadline = millis > 0 ? start + millis * 1000000 : Long.MAX_VALUE;
+		int[] values = rackValues(rack);
 
-		// builder has the original word
-		String word = builder.toString();
-		if (word.length() <= 1) {
-			return true;
+		// the searches only read the board, so every row and column can be searched 
+		// on its own thread. the cross checks and the files (see Line) have to be 
+		// built before they start
+		crossChecks("row");
+		Line[] files = new Line[size * 2];
+		int[][] bounds = new int[size * 2][];
+		int[] best = new int[size * 2];
+		for (int f = 0; f < files.length; f++) {
+			// row f/2 and col f/2
+			files[f] = line(f % 2 == 0 ? "row" : "col", f / 2, counts);
+			
+			// the most each anchor's moves could score, and the most of those
+			bounds[f] = new int[size];
+			best[f] = Integer.MIN_VALUE;
+			for (int i = 0; i < size; i++) {
+				if (!files[f].anchors[i]) continue;
+				bounds[f][i] = anchorBound(files[f], i, values);
+				best[f] = Math.max(best[f], bounds[f][i]);
+			}
 		}
 		
-		//System.out.println("checkWord: " + word);
+		// the files that could score the most go first, so they raise the bar for the
+		// others early (see TopMoves.threshold), and they get searched if time runs out
+		int[] order = byBound(files.length, best);
 		
-		// now sort the letters in the word, and assemble the key to lookup in the dictionary
-		builder = new StringBuilder();
-		Collections.sort(letters);
-		for (char c : letters) {
-			builder.append(c);
+		long searching = System.nanoTime();
+		counts.setupNanos = searching - start;
+		TopMoves top = new TopMoves(Math.max(limit, 0));
+		ArrayList<ForkJoinTask<?>> searches = new ArrayList<ForkJoinTask<?>>();
+		for (int f : order) {
+			searches.add(search(files[f], bounds[f], best[f], rack, top, deadline, counts));
 		}
-		String key = builder.toString();
-		
-		if (dictionary.containsKey(key)) {
-			ArrayList<String> words = dictionary.get(key);
-			if (words.contains(word)) {
-				if (noisy) System.out.printf("checkWord: true %s\n", word);
-				return true;
+		for (ForkJoinTask<?> search : searches) {
+			search.join();
+		}
+
+		MoveList moves = top.sorted();
+		moves.exhaustive = counts.anchorsStopped == 0;
+		counts.searchNanos = System.nanoTime() - searching;
+		return moves;
+	}
+	
+	// the indexes 0 until 'n', ordered by 'bounds', highest first (an insertion sort,
+	// there are only a few). equal bounds stay in index order
+	private static int[] byBound(int n, int[] bounds) {
+		int[] order = new int[n];
+		for (int a = 0; a < n; a++) {
+			int b = a;
+			while (b > 0 && bounds[order[b - 1]] < bounds[a]) {
+				order[b] = order[b - 1];
+				b--;
 			}
+			order[b] = a;
 		}
-		
-		if (noisy) System.out.printf("'%s' is not a valid word\n", word);
-		return false;
-		
+		return order;
 	}
 	
-	// finds the best place to play a given word, and prints the top <limit> 
-	// candidates to System.out
-	public void findBest(String letters, int limit) {
-		// 1. find all places that are valid (neighboring tile is played)
-		// 2. take the row (or column)
-		// 3. add existing letters to the set of available letters
-		// 4. get a list of all valid words
-		// 5. pick words that fit in the row/column, given the existing letters
-		// 6. score remaining words
-		// 7. sort by score and print
+	// the cached Line for row or col 'index', building it if it isn't there
+	private Line line(String dir, int index, Stats counts) {
+		Line[] lines = dir.equals("row") ? rowLines : colLines;
+		Line line = lines[index];
+		if (line == null) {
+			line = dir.equals("row") ? new Line(index, 0, dir) : new Line(0, index, dir);
+			lines[index] = line;
+			counts.filesBuilt++;
+		}
+		return line;
+	}
+	
+	// the Word for a move from best(), scored, with its bonuses and the words it makes
+	// across (see evaluate)
+	public Word word(long move) {
+		Word w = new Word(dictionary.graph.word(MoveList.id(move)));
+		int blanks = MoveList.blanks(move);
+		for (int i = 0; i < w.word.length(); i++) {
+			if ((blanks & (1 << i)) != 0) w.blankLetters().add(i);
+		}
+		w.setLocation(MoveList.row(move), MoveList.col(move), MoveList.dir(move));
+		evaluate(w);
+		return w;
+	}
 
-		// downcase the incoming letters
-		letters = letters.toLowerCase();
-		for (char c : letters.toCharArray()) {
-			if (c >= 'a' && c <= 'z') {
-				// lower case letters are valid
-			}
-			else if (c == Tile.Blank) {
-				// blank tile 
+	// starts searchFile on the common fork/join pool, with its own copy of the rack
+	private ForkJoinTask<?> search(final Line line, final int[] bounds, final int best, Rack rack, 
+			final TopMoves top, final long deadline, final Stats counts) {
+		final Rack letters = rack.copy();
+		return ForkJoinPool.commonPool().submit(new Runnable() {
+			public void run() {
+				searchFile(line, bounds, best, letters, top, deadline, counts);
 			}
-			else {
-				System.err.printf("invalid character in tile set: %c\n", c);
-				return;
+		});
+	}
+
+	// the values of the tiles in 'rack', highest first (blanks are worth nothing)
+	private int[] rackValues(Rack rack) {
+		int[] values = new int[rack.size()];
+		int n = 0;
+		for (int l = 0; l < 26; l++) {
+			for (int i = 0; i < rack.count(l); i++) {
+				values[n++] = -letterValues[l];
 			}
 		}
+		Arrays.sort(values);
+		for (int i = 0; i < n; i++) {
+			values[i] = -values[i];
+		}
+		return values;
+	}
 
-		ArrayList<Character> lettersArray = toArray(letters);
+	// given a row OR a column, generate and score all valid words, and offer them to 
+	// 'top'. 'bounds' are the most each anchor's moves could score (see anchorBound) and
+	// 'best' the most of those. the generator scores the moves itself, from the bonuses
+	// and cross scores of the line. anchors that aren't done by 'deadline' are left
+	// (see MoveGenerator.deadline). what it did is added to 'counts'
+	private void searchFile(Line line, int[] bounds, int best, Rack rack, TopMoves top, long deadline, 
+			Stats counts) {
+		Stats.SearchFileEvent event = new Stats.SearchFileEvent();
+		event.begin();
+		Stats file = new Stats();
+		file.files = 1;
+		String dir = line.dir;
+		int index = line.index;
+		boolean[] anchors = line.anchors;
+		for (int i = 0; i < size; i++) {
+			if (anchors[i]) file.anchors++;
+		}
+		
+		// if nothing in the whole file can make the list we don't need to look any
+		// further. otherwise the anchors go best first, like the files
+		if (best == Integer.MIN_VALUE) {
+			file.filesEmpty = 1;
+		}
+		else if (best < top.threshold()) {
+			file.filesSkipped = 1;
+			file.anchorsSkipped = file.anchors;
+		}
+		else if (System.nanoTime() > deadline) {
+			// out of time before we started
+			file.anchorsStopped = file.anchors;
+		}
+		else {
+			MoveGenerator generator = new MoveGenerator(dictionary.graph, line.letters, line.cross, anchors, dir, index);
+			generator.scoring(letterValues, line.played, line.letterBonus, line.wordBonus, line.crossScores, 
+					bingoCount, bingoBonus);
+			generator.deadline = deadline;
+			MoveList moves = new MoveList();
+			for (int i : byBound(size, bounds)) {
+				if (!anchors[i]) continue;
+				if (bounds[i] < top.threshold()) {
+					file.anchorsSkipped++;
+					continue;
+				}
+				if (generator.stopped || System.nanoTime() > deadline) {
+					file.anchorsStopped++;
+					continue;
+				}
+				
+				moves.clear();
+				generator.generate(rack, i, moves);
+				top.offer(moves);
+				file.scored += moves.size();
+				if (generator.stopped) file.anchorsStopped++;
+			}
+			file.edges = generator.followed;
+			file.crossRejects = generator.crossRejects;
+			file.candidates = generator.candidates;
+		}
+		
+		counts.add(file);
+		event.end();
+		if (event.shouldCommit()) {
+			event.dir = dir;
+			event.index = index;
+			event.anchors = file.anchors;
+			event.anchorsSkipped = file.anchorsSkipped;
+			event.candidates = file.candidates;
+			event.commit();
+		}
+	}
+	
+	// the most that a move built from 'anchor' (see MoveGenerator.generate) in 'file'
+	// could score, without knowing which letters go where:
+	// - the move stays between the previous anchor (or the tiles right before this 
+	//   one) and the square past the last open square the rack could reach
+	// - it puts our highest letters on the best letter bonuses, and takes the best 
+	//   word bonuses
+	// - every tile it places could make a word across, with our highest letter
+	private int anchorBound(Line file, int anchor, int[] values) {
+		char[] line = file.letters;
+		boolean[] anchors = file.anchors;
+		int n = values.length;
+		int top = n > 0 ? values[0] : 0;
 		
-		// the hash of Word objects that we will build, the hash will
-		// cut out duplicates
-		HashSet<Word> wordsHash = new HashSet<Word>();
-		int c = 0;
+		int start = anchor;
+		if (start > 0 && line[start - 1] != Tile.Empty) {
+			while (start > 0 && line[start - 1] != Tile.Empty) start--;
+		}
+		else {
+			while (start > 0 && !anchors[start - 1] && line[start - 1] == Tile.Empty) start--;
+		}
 		
-		for (int i = 0; i < tiles.length; i++) {
-			// check row i
-			for (Word w : searchFile(i,0,"row", lettersArray)) {
-				wordsHash.add(w);
-				c++;
+		// the letters already on the board, and the bonuses of the open squares
+		int played = 0;
+		int open = 0;
+		int reached = 0;
+		int[] letterBonus = new int[line.length];
+		int[] wordBonus = new int[line.length];
+		int[] across = new int[line.length];
+		for (int i = start; i < line.length; i++) {
+			if (line[i] != Tile.Empty) {
+				played += file.played[i];
+				continue;
 			}
-			// check col i
-			for (Word w : searchFile(0,i,"col", lettersArray)) {
-				wordsHash.add(w);
-				c++;
+			if (i >= anchor) {
+				// even with every tile placed from the anchor on, this one is too far
+				if (reached == n) break;
+				reached++;
 			}
+			
+			int cross = file.crossScores[i];
+			letterBonus[open] = -file.letterBonus[i];
+			wordBonus[open] = -file.wordBonus[i];
+			across[open] = cross < 0 ? 0 : -(cross + top * file.letterBonus[i]) * file.wordBonus[i];
+			open++;
 		}
-
-		// convert the hash to a list so we can sort
-		ArrayList<Word> words = new ArrayList<Word>();
-		words.addAll(wordsHash);
-		Collections.sort(words);
 		
-		if (noisy) System.out.printf("wordsHash: %d, words: %d\n", c, words.size());
+		// the best 'placed' of everything (they're negated, so sorting puts them first)
+		int placed = Math.min(n, open);
+		Arrays.sort(letterBonus, 0, open);
+		Arrays.sort(wordBonus, 0, open);
+		Arrays.sort(across, 0, open);
+		int main = played;
+		int multiplier = 1;
+		int bound = 0;
+		for (int i = 0; i < placed; i++) {
+			main += values[i] * -letterBonus[i];
+			multiplier *= -wordBonus[i];
+			bound -= across[i];
+		}
+		bound += main * multiplier;
+		if (placed >= bingoCount) {
+			bound += bingoBonus;
+		}
 		
-		// and print what we found!
-		for (Word w : words) {
-			System.out.println(w);
-			if (limit > 0) {
-				limit--;
-				if (limit == 0) break;
+		return bound;
+	}
+	
+	// one row or column as searchFile sees it, everything indexed by the position in
+	// the file. once built it's only read, so searches running at the same time (and
+	// copies of the board) can share it
+	private class Line {
+		final char[] letters = new char[size];
+		final int[] cross = new int[size];
+		final boolean[] anchors = new boolean[size];
+		final int[] played = new int[size];       // letter values, 0 for blanks
+		final int[] letterBonus = new int[size];
+		final int[] wordBonus = new int[size];
+		final int[] crossScores = new int[size];
+		final String dir;
+		final int index;
+		
+		// 0-based indexes, the file starting at row,col along 'dir'
+		Line(int row, int col, String dir) {
+			this.dir = dir;
+			index = dir.equals("row") ? row : col;
+			int[][] checks = crossChecks(dir);
+			int[][] scores = dir.equals("row") ? rowCrossScores : colCrossScores;
+			for (int i = 0; i < size; i++) {
+				int r = dir.equals("row") ? row : i;
+				int c = dir.equals("row") ? i : col;
+				letters[i] = letter(r, c);
+				letterBonus[i] = letterBonus(r, c);
+				wordBonus[i] = wordBonus(r, c);
+				crossScores[i] = scores[r][c];
+				if (letters[i] == Tile.Empty) {
+					cross[i] = checks[r][c];
+					anchors[i] = validTile(r, c);
+				}
+				else if (!isBlank(r, c)) {
+					played[i] = letterValues[letters[i] - 'a'];
+				}
 			}
 		}
 	}
-
-	// given a row OR a column, search and score all valid words
-	private ArrayList<Word> searchFile(int row, int col, String dir, ArrayList<Character> letters) {
-		//System.err.printf("searchFile: %d,%d\n", row, col);
-		ArrayList<Word> words = new ArrayList<Word>();
-		ArrayList<Character> rowLetters = new ArrayList<Character>();
-		ArrayList<Character> colLetters = new ArrayList<Character>();
-		boolean checkRow = false;
-		boolean checkCol = false;
+	
+	// 0-based indexes
+	// returns the mask of letters (bit 0 for 'a') that can go on the empty tile at 
+	// row,col when playing along 'dir', based on the word they form in the other 
+	// direction. if there are no tiles in the other direction, any letter can go here
+	private int crossCheck(int row, int col, String dir) {
+		Dawg graph = dictionary.graph;
+		
+		// we walk perpendicular to 'dir'
+		int dr = dir.equals("row") ? 1 : 0;
+		int dc = dir.equals("row") ? 0 : 1;
+		
+		// back up to the start of the letters before this tile
+		int r = row - dr;
+		int c = col - dc;
+		while (r >= 0 && c >= 0 && letter(r, c) != Tile.Empty) {
+			r -= dr;
+			c -= dc;
+		}
+		r += dr;
+		c += dc;
+		
+		boolean before = r != row || c != col;
+		boolean after = row + dr < size && col + dc < size 
+				&& letter(row + dr, col + dc) != Tile.Empty;
+		if (!before && !after) {
+			return Dawg.ALL;
+		}
+		
+		// walk the letters before this tile
+		int node = Dawg.ROOT;
+		while ((r != row || c != col) && node != Dawg.NONE) {
+			node = graph.child(node, letter(r, c) - 'a');
+			r += dr;
+			c += dc;
+		}
+		if (node == Dawg.NONE) {
+			return 0;
+		}
 		
-		for (int i = 0; i < tiles.length; i++) {
-			if (dir.equals("row")) {
-				rowLetters.add(tiles[row][i].letter);
-				if (validTile(row, i)) checkRow = true;
+		// try each letter that can follow, along with the letters after this tile
+		int mask = 0;
+		int edges = graph.edges(node);
+		for (int l = 0; l < 26; l++) {
+			if ((edges & (1 << l)) == 0) continue;
+			int n = graph.child(node, l);
+			r = row + dr;
+			c = col + dc;
+			while (r < size && c < size && letter(r, c) != Tile.Empty && n != Dawg.NONE) {
+				n = graph.child(n, letter(r, c) - 'a');
+				r += dr;
+				c += dc;
 			}
-			else if (dir.equals("col")) {
-				colLetters.add(tiles[i][col].letter);
-				if (validTile(i, col)) checkCol = true;
+			if (n != Dawg.NONE && graph.terminal(n)) {
+				mask |= 1 << l;
 			}
 		}
 		
-		if (checkRow) {
-			words.addAll(findWords(letters, rowLetters, "row", row));
-		}
+		return mask;
+	}
+	
+	// 0-based indexes
+	// the sum of the letter values in the word across 'dir' that the empty tile at 
+	// row,col would join, or -1 if there are no tiles on either side
+	private int crossScore(int row, int col, String dir) {
+		int dr = dir.equals("row") ? 1 : 0;
+		int dc = dir.equals("row") ? 0 : 1;
+		int sum = -1;
 		
-		if (checkCol) {
-			words.addAll(findWords(letters, colLetters, "col", col));
+		for (int sign = -1; sign <= 1; sign += 2) {
+			int r = row + sign * dr;
+			int c = col + sign * dc;
+			while (r >= 0 && c >= 0 && r < size && c < size && letter(r, c) != Tile.Empty) {
+				if (sum < 0) sum = 0;
+				if (!isBlank(r, c)) sum += letterValues[letter(r, c) - 'a'];
+				r += sign * dr;
+				c += sign * dc;
+			}
 		}
 		
-		return words;
+		return sum;
 	}
 	
-	// given a bunch of letters, fit them into a series of buckets (with and/or
-	// without existing letters)
-	private ArrayList<Word> findWords(ArrayList<Character> letters, ArrayList<Character> buckets, String dir, int index) {
-		//System.err.printf("findWords: %s %d\n", dir, index);
-		ArrayList<Word> words = new ArrayList<Word>();
-
-		//System.err.printf("findWords: %s in %s\n", lettersArray.toString(), buckets.toString());
-		
-		for (Word possible : allKnownWords(letters, buckets)) {
-			for (int i = 0; i < tiles.length; i++) {
-				//System.err.printf("findWords: %d %s\n", i, possible);
-				if (linesUp(possible, letters, buckets, i)) {
-					int row = dir.equals("row") ? index : i;
-					int col = dir.equals("row") ? i : index;
-					if (fits(row+1, col+1, possible, dir)) {
-						//System.err.printf("findWords: true %s %d,%d\n", possible, row, col);
-						Word valid = possible.clone();
-						valid.setLocation(row, col, dir);
-						if (score(false, valid) > 0) {
-							words.add(valid);
-						}
-					}
-					else {
-						//System.err.printf("findWords: false %s %d,%d\n", possible, row, col);
-					}
-					clearBlank();
-					clearPending();
+	// the cached cross checks for moves along 'dir', built on first use
+	private int[][] crossChecks(String dir) {
+		if (rowChecks == null) {
+			rowChecks = new int[size][size];
+			colChecks = new int[size][size];
+			rowCrossScores = new int[size][size];
+			colCrossScores = new int[size][size];
+			rowLines = new Line[size];
+			colLines = new Line[size];
+			for (int i = 0; i < size; i++) {
+				for (int j = 0; j < size; j++) {
+					updateCrossCheck(i, j);
 				}
 			}
 		}
 		
-		return words;
+		return dir.equals("row") ? rowChecks : colChecks;
+	}
+	
+	// 0-based indexes
+	private void updateCrossCheck(int row, int col) {
+		rowLines[row] = null;
+		colLines[col] = null;
+		if (letter(row, col) == Tile.Empty) {
+			rowChecks[row][col] = crossCheck(row, col, "row");
+			colChecks[row][col] = crossCheck(row, col, "col");
+			rowCrossScores[row][col] = crossScore(row, col, "row");
+			colCrossScores[row][col] = crossScore(row, col, "col");
+		}
+		else {
+			rowChecks[row][col] = 0;
+			colChecks[row][col] = 0;
+			rowCrossScores[row][col] = -1;
+			colCrossScores[row][col] = -1;
+		}
 	}
 	
-	// given a word and a location, checks that the letters in 'word' 
-	// match up with the letters already on the board
-	private boolean linesUp(Word word, ArrayList<Character> available, ArrayList<Character> buckets, int start) {
-		boolean linesUp = true;
-		@SuppressWarnings("unchecked")
-		ArrayList<Character> avail = (ArrayList<Character>) available.clone();
+	// 0-based indexes
+	// the tile at row,col was just placed, removed or changed. the only cross checks 
+	// that can change are on the tile itself and on the first empty tile past the run 
+	// of letters in each direction from it
+	private void tileChanged(int row, int col) {
+		if (rowChecks == null) return;
 		
-		for (int i = 0; i < word.word.length(); i++) {
-			if (start + i >= buckets.size()) {
-				linesUp = false;
-				break;
-			}
-			
-			char target = word.word.charAt(i);
-			
-			if (buckets.get(start + i) == Tile.Empty) {
-				// nothing on the board
-				
-				if (avail.remove((Character)target)) {
-					// we had the character
-				}
-				else {
-					// the target wasn't in available...but what about a blank tile?
-					if (word.blankLetters().contains(i)) {
-						// ok we're still good
-					}
-					else {
-						// ok now we're hosed
-						linesUp = false;
-						break;
-					}
-				}
+		updateCrossCheck(row, col);
+		
+		int[][] steps = { {-1, 0}, {1, 0}, {0, -1}, {0, 1} };
+		for (int[] step : steps) {
+			int r = row + step[0];
+			int c = col + step[1];
+			while (r >= 0 && c >= 0 && r < size && c < size && letter(r, c) != Tile.Empty) {
+				r += step[0];
+				c += step[1];
 			}
-			else {
-				if (buckets.get(start + i) == target) {
-					// the letter is on the board already
-				}
-				else {
-					// the wrong letter is on the board, no joy
-					linesUp = false;
-					break;
-				}
+			if (r >= 0 && c >= 0 && r < size && c < size) {
+				updateCrossCheck(r, c);
 			}
 		}
-		
-		//System.err.printf("linesUp: %s %s %s %s[%d] %d %s\n", (linesUp ? "true" : "false"), word.word, available, buckets, start, i, avail);
-		return linesUp;
 	}
 	
 	// given a bunch of letters, return all the words that can be created with them
-	// 1. our dictionary has keys of sorted strings
-	// 2. for each of those keys, check if the letters in the key are in 'letters'
-	public ArrayList<Word> allKnownWords(ArrayList<Character> letters, ArrayList<Character> buckets) {
-		//System.err.printf("allKnownWords: %s\n", letters.toString());
+	// 1. our dictionary groups words by their sorted letters (the "key")
+	// 2. for each of those keys, check if the letters in the key are in 'letters',
+	//    where each blank in 'letters' can stand in for one letter we don't have
+	// 3. words that need blanks come back once for each way of choosing which of
+	//    their letters are the blanks (see Word.blankLetters)
+	// the words only depend on the rack (and the letter values), not on the board. when
+	// they come from the cache they're the same Word objects as the last time, so they
+	// shouldn't be changed
+	public ArrayList<Word> allKnownWords(Rack letters) {
+		//System.err.printf("allKnownWords: %s\n", letters);
+		String asked = null;
+		if (cache != null) {
+			asked = String.format("words %d %s", rules.id, letters);
+			Word[] found = (Word[]) cache.get(asked);
+			if (found != null) {
+				return new ArrayList<Word>(Arrays.asList(found));
+			}
+		}
+		
+		Stats.WordsEvent event = new Stats.WordsEvent();
+		event.begin();
+		long started = System.nanoTime();
+		long keys = 0;
+		long rejected = 0;
 		ArrayList<Word> words = new ArrayList<Word>();
-		if (buckets == null) buckets = new ArrayList<Character>();
+		int blanks = letters.blanks();
 		
-		if (letters.remove((Character)Tile.Blank)) {
-			// now re-add a real tile for each letter of the alphabet
-
-			for (char c = 'a'; c <= 'z'; c++) {
-				letters.add(c);
-				for (Word w : allKnownWords(letters, buckets)) {
-					if (w.word.indexOf(c) >= 0) {
-						// we expand w into all the valid words it could be
-						for (int i = 0; i < w.word.length(); i++) {
-							if (w.word.charAt(i) == c) {
-								Word x = w.clone();
-								x.blankLetters().add(i);
-								//System.err.printf("allKnownWords: %s with blank %c at %d\n", x.word, c, i);
-								words.add(x);
-							}
-						}
-					}
-					else {
-						//System.err.printf("allKnownWords: %s\n", w.word);
-						words.add(w);
-					}
-				}
-				letters.remove(letters.indexOf(c));
+		// the rack's signature, to compare against each key's (see Dictionary.shortfall)
+		int mask = letters.mask();
+		long lo = letters.packed(0);
+		long hi = letters.packed(13);
+		
+		// how many of each letter a key is short, ie has to come from blanks
+		int[] missing = new int[26];
+		
+		// keys are sorted by length, so we can stop at the ones that are too long
+		int end = dictionary.keysUpTo(letters.size());
+		for (int key = 0; key < end; key++) {
+			keys++;
+			int short_ = dictionary.shortfall(key, letters, mask, lo, hi, blanks);
+			if (short_ > blanks) {
+				rejected++;
+				continue;
 			}
 			
-			// ...and put the blank back
-			letters.add(Tile.Blank);
-		}
-		else {
-			for (String key : dictionary.keySet()) {
-				@SuppressWarnings("unchecked")
-				ArrayList<Character> set = (ArrayList<Character>) letters.clone();
-				for (char c : buckets) {
-					if (c != Tile.Empty) set.add(c); 
+			int first = dictionary.firstWord(key);
+			if (short_ > 0) {
+				// work out which letters the blanks are for
+				for (int l = 0; l < 26; l++) {
+					missing[l] = Math.max(0, dictionary.count(key, l) - letters.count(l));
 				}
-				
-				boolean hit = true;
-				for (char c : key.toCharArray()) {
-					int i = set.indexOf(c);
-					if (i >= 0) {
-						set.remove(i);
-					}
-					else {
-						hit = false;
-						break;
-					}
+			}
+			
+			for (int id = first; id < dictionary.firstWord(key + 1); id++) {
+				if (short_ == 0) {
+					words.add(new Word(dictionary.word(id)));
 				}
-				
-				if (hit) {
-					for (String s : dictionary.get(key)) {
-						words.add(new Word(s));
-					}
+				else {
+					Word w = new Word(dictionary.word(id));
+					placeBlanks(w, 0, missing, short_, words);
 				}
 			}
 		}
@@ -779,10 +1429,61 @@ public class Board implements Serializable {
 			}
 		}
 
+		if (cache != null) {
+			long size = 0;
+			for (Word w : words) {
+				size += 96 + w.word.length() * 2;
+			}
+			cache.put(asked, words.toArray(new Word[words.size()]), size);
+		}
+		
+		if (stats != null) {
+			Stats counts = new Stats();
+			counts.keys = keys;
+			counts.keysRejected = rejected;
+			counts.words = words.size();
+			counts.wordsNanos = System.nanoTime() - started;
+			stats.add(counts);
+		}
+		event.end();
+		if (event.shouldCommit()) {
+			event.rack = letters.toString();
+			event.keys = keys;
+			event.keysRejected = rejected;
+			event.words = words.size();
+			event.commit();
+		}
+
 		//System.err.println("allKnownWords: " + words);
 		return words;
 	}
 	
+	// adds a copy of 'w' to 'words' for each way of picking which of its letters (from 
+	// index 'i' on) are blanks: 'missing' is how many of each letter still have to be
+	// blanks, 'left' is the total of those
+	private void placeBlanks(Word w, int i, int[] missing, int left, ArrayList<Word> words) {
+		if (left == 0) {
+			words.add(w.clone());
+			return;
+		}
+		if (i == w.word.length()) {
+			return;
+		}
+		
+		int l = w.word.charAt(i) - 'a';
+		if (missing[l] > 0) {
+			// this letter is a blank...
+			missing[l]--;
+			w.blankLetters().add(i);
+			placeBlanks(w, i + 1, missing, left - 1, words);
+			w.blankLetters().remove(w.blankLetters().size() - 1);
+			missing[l]++;
+		}
+		
+		// ...or it isn't
+		placeBlanks(w, i + 1, missing, left, words);
+	}
+	
 	// wow there's no built-in method for converting char[] to ArrayList<Character>? fail
 	private ArrayList<Character> toArray(String s) {
 		ArrayList<Character> a = new ArrayList<Character>(s.length());
@@ -798,77 +1499,86 @@ public class Board implements Serializable {
 		
 		try {
 			fis = new FileInputStream(fileName);
-			Reader r = new InputStreamReader(fis, "UTF-8");
+			success = load(new InputStreamReader(fis, "UTF-8"));
+			fis.close();
+		} catch (Exception ex) {
+			System.err.println("\nerror during load");
+			ex.printStackTrace();
+		}
+		
+		return success;
+	}
+	
+	// same as load(fileName), with the board read from 'r' (see Batch)
+	public boolean load(Reader r) throws IOException {
+		boolean success = false;
+		
+		int intch;
+		int row = 0;
+		int col = 0;
+		
+		while ((intch = r.read()) != -1) {
+			Character ch = (char) intch;
+			//System.err.printf("%c", ch);
 			
-			int intch;
-			int row = 0;
-			int col = 0;
+			if (col >= size) {
+				row++;
+				col = 0;
+			}
 			
-			while ((intch = r.read()) != -1) {
-				Character ch = (char) intch;
-				//System.err.printf("%c", ch);
+			// process different chars
+			if (ch >= 'a' && ch <= 'z') {
+				if (row == size) System.err.println("too many characters");
+				set(row, col, ch, 0);
+				if (noisy) System.out.printf("%d,%d: %c\n", row+1, col+1, letter(row, col));
+				col++;
+			}
+			else if (ch >= 'A' && ch <= 'Z') {
+				if (row == size) System.err.println("too many characters");
+				set(row, col, Character.toLowerCase(ch), FRESH);
+				if (noisy) System.out.printf("%d,%d: %c (just played)\n", row+1, col+1, letter(row, col));
+				col++;
+			}
+			else if (ch == '#' || ch == Tile.Empty) {
+				if (row == size) System.err.println("too many characters");
+				set(row, col, Tile.Empty, 0);
+				if (noisy) System.out.printf("%d,%d: %c\n", row+1, col+1, letter(row, col));
+				col++;
+			}
+			else if (ch == '*') {
+				int prevRow = row;
+				int prevCol = col - 1;
 				
-				if (col >= tiles.length) {
-					row++;
-					col = 0;
-				}
-				
-				// process different chars
-				if (ch >= 'a' && ch <= 'z') {
-					if (row == tiles.length) System.err.println("too many characters");
-					tiles[row][col].letter = ch;
-					if (noisy) System.out.printf("%d,%d: %c\n", row+1, col+1, tiles[row][col].letter);
-					col++;
-				}
-				else if (ch >= 'A' && ch <= 'Z') {
-					if (row == tiles.length) System.err.println("too many characters");
-					tiles[row][col].letter = Character.toLowerCase(ch);
-					tiles[row][col].fresh = true;
-					if (noisy) System.out.printf("%d,%d: %c (just played)\n", row+1, col+1, tiles[row][col].letter);
-					col++;
-				}
-				else if (ch == '#' || ch == Tile.Empty) {
-					if (row == tiles.length) System.err.println("too many characters");
-					tiles[row][col].letter = Tile.Empty;
-					if (noisy) System.out.printf("%d,%d: %c\n", row+1, col+1, tiles[row][col].letter);
-					col++;
-				}
-				else if (ch == '*') {
-					int prevRow = row;
-					int prevCol = col - 1;
-					
-					if (prevCol < 0) {
-						prevCol = tiles.length - 1;
-						prevRow--;
-					}
-					
-					tiles[prevRow][prevCol].blank = true;
-					if (noisy) System.out.printf("%d,%d: %c* (blank)\n", prevRow+1, prevCol+1, tiles[prevRow][prevCol].letter);
-				}
-				else if (ch == '\n') {
-					if (col != tiles.length - 1) {
-						//System.err.printf("unexpected newline in input file at coord %d,%d\n", row, col);
-					}
-				}
-				else {
-					// just skip everything else
+				if (prevCol < 0) {
+					prevCol = size - 1;
+					prevRow--;
 				}
 				
+				flags[prevRow * size + prevCol] |= BLANK;
+				if (noisy) System.out.printf("%d,%d: %c* (blank)\n", prevRow+1, prevCol+1, letter(prevRow, prevCol));
 			}
-			
-			if (row < tiles.length) {
-				System.err.printf("didn't get enough tiles! only got to %d,%d", row, col);
+			else if (ch == '\n') {
+				if (col != size - 1) {
+					//System.err.printf("unexpected newline in input file at coord %d,%d\n", row, col);
+				}
 			}
 			else {
-				clearPending();
-				turn++;
-				success = true;
+				// just skip everything else
 			}
 			
-			fis.close();
-		} catch (Exception ex) {
-			System.err.println("\nerror during load");
-			ex.printStackTrace();
+		}
+		
+		if (row < size) {
+			System.err.printf("didn't get enough tiles! only got to %d,%d", row, col);
+		}
+		else {
+			turn++;
+			success = true;
+			modified = true;
+			
+			// everything may have changed, rebuild the cross checks on next use
+			rowChecks = null;
+			if (journal != null) journal.loaded(this);
 		}
 		
 		return success;
@@ -876,35 +1586,72 @@ public class Board implements Serializable {
 	
 	// 1-based indexes
 	public void toggleBlank(int row, int col) {
-		if (tiles[row-1][col-1].letter != Tile.Empty) {
-			tiles[row-1][col-1].blank = !tiles[row-1][col-1].blank;
+		if (letter(row-1, col-1) != Tile.Empty) {
+			flags[(row-1) * size + col-1] ^= BLANK;
+			modified = true;
+			tileChanged(row-1, col-1);
+			if (journal != null) journal.blank(row-1, col-1);
 		}
 	}
 	
+	// takes back the last play, returns how many tiles came off the board
 	public int undo() {
+		return undo(1);
+	}
+	
+	// takes back the last 'turns' plays. with a journal that has them, any number of
+	// plays can be taken back (and everything that happened after them), and a load
+	// counts as one. without one, only the tiles of the last play are known (they're
+	// "fresh"), so only those
+	public int undo(int turns) {
+		if (journal != null && journal.turns() > 0) {
+			Board before = journal.undo(turns);
+			if (before == null) return 0;
+			int undone = 0;
+			for (int i = 0; i < grid.length; i++) {
+				if (grid[i] != before.grid[i]) undone++;
+			}
+			System.arraycopy(before.grid, 0, grid, 0, grid.length);
+			System.arraycopy(before.flags, 0, flags, 0, flags.length);
+			turn = before.turn;
+			modified = true;
+			
+			// rebuild the cross checks on next use
+			rowChecks = null;
+			return undone;
+		}
+		
 		int undone = 0;
+		boolean[] removed = new boolean[grid.length];
 		
-		for (int i = 0; i < tiles.length; i++) {
-			for (int j = 0; j < tiles.length; j++) {
-				Tile t = tiles[i][j];
-				
-				if (t.fresh) {
-					t.letter = Tile.Empty;
-					t.fresh = false;
-					t.blank = false;
+		for (int i = 0; i < size; i++) {
+			for (int j = 0; j < size; j++) {
+				if (isFresh(i, j)) {
+					set(i, j, Tile.Empty, 0);
+					removed[i * size + j] = true;
 					
 					undone++;
 				}
 			}
 		}
+		if (undone > 0) modified = true;
+		
+		// only fix up the cross checks once all of the tiles are off the board
+		for (int i = 0; i < removed.length; i++) {
+			if (removed[i]) tileChanged(i / size, i % size);
+		}
+		if (journal != null && undone > 0) journal.checkpoint(this);
 
 		return undone;
 	}
 	
 	public void letterDistribution(String leftovers) {
 		// index 0 thru 25 are for letters a to z, index 26 is for blank tiles
-		int[] counts = new int[27];
+		int[] counts = tileCounts();
 		int total = 0;
+		for (int count : counts) {
+			total += count;
+		}
 		
 		if (leftovers == null) leftovers = "";
 		
@@ -922,26 +1669,30 @@ public class Board implements Serializable {
 		}
 
 		
-		for (int i = 0; i < tiles.length; i++){
-			for (int j = 0; j < tiles.length; j++) {
-				Tile t = tiles[i][j];
-				if (t.letter != Tile.Empty){
-					if (t.blank) {
-						counts[26]++;
+		for (int i = 0; i < counts.length - 1; i++) {
+			System.out.printf("%c: %d\n", 'a' + i, counts[i]);
+		}
+		System.out.printf("_: %d\n", counts[26]);
+		System.out.printf("\ntotal: %d\n", total);
+	}
+	
+	// how many of each tile are on the board, indexed like a Rack: 0 to 25 for 'a' 
+	// to 'z' and Rack.BLANK for blanks
+	public int[] tileCounts() {
+		int[] counts = new int[27];
+		for (int i = 0; i < size; i++){
+			for (int j = 0; j < size; j++) {
+				if (letter(i, j) != Tile.Empty){
+					if (isBlank(i, j)) {
+						counts[Rack.BLANK]++;
 					}
 					else {
-						counts[t.letter-'a']++;
+						counts[letter(i, j)-'a']++;
 					}
-					total++;
 				}
 			}
 		}
-		
-		for (int i = 0; i < counts.length - 1; i++) {
-			System.out.printf("%c: %d\n", 'a' + i, counts[i]);
-		}
-		System.out.printf("_: %d\n", counts[26]);
-		System.out.printf("\ntotal: %d\n", total);
+		return counts;
 	}
 }
 	
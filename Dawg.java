@@ -0,0 +1,331 @@
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+// A letter graph of the dictionary, used by the move generator (see MoveGenerator.java)
+// to walk words one letter at a time instead of looking up whole strings.
+//
+// It starts out as a trie, one node per prefix, and is then minimized into a DAWG:
+// nodes with the same letters leaving them to the same nodes (so the same words after
+// them) are merged into one, which shares the endings ("-ing", "-ness", ...) of words
+// as well as their beginnings. That takes it from ~390,000 nodes to a fraction of it.
+//
+// Every node keeps a bit mask of the letters leaving it (bits 0-25 for 'a'-'z') plus a
+// flag for "a word ends here". The edges of a node are stored next to each other in
+// letter order, so following letter L means counting the bits below L in the mask.
+//
+// Every edge also keeps the number of words that come before the ones it leads to, in
+// alphabetical order, among the words of its node. That only depends on the words
+// after the node, so it's the same for all the prefixes that share a merged node.
+// Adding those up along the path of a word gives its position in the sorted word
+// list, so a word can be passed around as one int (see id and word).
+//
+// The tables are plain int buffers so that a compiled dictionary can use them straight
+// out of a memory mapped file (see Dictionary.java).
+public class Dawg {
+
+	public static final int NONE = -1;
+	public static final int ROOT = 0;
+
+	// mask of all 26 letters
+	public static final int ALL = (1 << 26) - 1;
+
+	// set in a node's mask when the path to the node spells a word
+	private static final int TERMINAL = 1 << 26;
+
+	// per node: outgoing letters + TERMINAL flag
+	private IntBuffer mask;
+
+	// per node: index into 'target' of the node's first edge
+	private IntBuffer first;
+
+	// edge destinations
+	private IntBuffer target;
+
+	// per edge: how many words of the edge's node sort before the words through it
+	// (the word ending at the node, and the words through the edges before it)
+	private IntBuffer rank;
+
+	private int nodeCount;
+	private int edgeCount;
+
+	private Dawg(IntBuffer mask, IntBuffer first, IntBuffer target, IntBuffer rank) {
+		this.mask = mask;
+		this.first = first;
+		this.target = target;
+		this.rank = rank;
+		nodeCount = mask.limit();
+		edgeCount = target.limit();
+	}
+
+	// build the graph from a list of lower case words
+	public static Dawg build(List<String> words) {
+		ArrayList<String> sorted = new ArrayList<String>(words.size());
+		for (String w : words) {
+			if (isWord(w)) sorted.add(w);
+		}
+		Collections.sort(sorted);
+
+		Builder b = new Builder();
+		b.addNode(sorted, 0, sorted.size(), 0);
+		b.minimize();
+		return new Dawg(IntBuffer.wrap(b.mask, 0, b.nodeCount).slice(), 
+				IntBuffer.wrap(b.first, 0, b.nodeCount).slice(),
+				IntBuffer.wrap(b.target, 0, b.edgeCount).slice(),
+				IntBuffer.wrap(b.rank, 0, b.edgeCount).slice());
+	}
+	
+	// the graph reads its tables out of 'in' (no copying), starting at its position.
+	// the layout is what write() produces
+	public static Dawg read(ByteBuffer in) {
+		int nodes = in.getInt();
+		int edges = in.getInt();
+		IntBuffer mask = slice(in, nodes);
+		IntBuffer first = slice(in, nodes);
+		IntBuffer target = slice(in, edges);
+		IntBuffer rank = slice(in, edges);
+		return new Dawg(mask, first, target, rank);
+	}
+	
+	// takes the next 'count' ints from 'in' as a view, and skips past them
+	private static IntBuffer slice(ByteBuffer in, int count) {
+		ByteBuffer b = in.slice().order(in.order());
+		b.limit(count * 4);
+		in.position(in.position() + count * 4);
+		return b.asIntBuffer();
+	}
+	
+	// number of bytes write() will need
+	public int byteSize() {
+		return 8 + (nodeCount * 2 + edgeCount * 2) * 4;
+	}
+	
+	public void write(ByteBuffer out) {
+		out.putInt(nodeCount);
+		out.putInt(edgeCount);
+		for (int i = 0; i < nodeCount; i++) out.putInt(mask.get(i));
+		for (int i = 0; i < nodeCount; i++) out.putInt(first.get(i));
+		for (int i = 0; i < edgeCount; i++) out.putInt(target.get(i));
+		for (int i = 0; i < edgeCount; i++) out.putInt(rank.get(i));
+	}
+
+	// only plain a-z words make it into the graph
+	private static boolean isWord(String w) {
+		if (w.length() == 0) return false;
+		for (int i = 0; i < w.length(); i++) {
+			char c = w.charAt(i);
+			if (c < 'a' || c > 'z') return false;
+		}
+		return true;
+	}
+
+	// growable tables used while building the graph from a word list
+	private static class Builder {
+		private int[] mask = new int[1024];
+		private int[] first = new int[1024];
+		private int[] target = new int[1024];
+		private int[] rank = new int[1024];
+		private int nodeCount;
+		private int edgeCount;
+
+		// adds the node for words[lo, hi), which all share their first 'depth' letters,
+		// and (recursively) everything below it. returns the node index. each child's
+		// words are a run of the sorted words, so the ranks are where the runs start
+		private int addNode(List<String> words, int lo, int hi, int depth) {
+			int start = lo;
+			int node = nodeCount++;
+			if (node == mask.length) {
+				mask = Arrays.copyOf(mask, node * 2);
+				first = Arrays.copyOf(first, node * 2);
+			}
+
+			// the words are sorted, so if one ends here it's the first one in the range
+			int m = 0;
+			if (words.get(lo).length() == depth) {
+				m |= TERMINAL;
+				lo++;
+			}
+			for (int i = lo; i < hi; i++) {
+				m |= 1 << (words.get(i).charAt(depth) - 'a');
+			}
+
+			int edges = Integer.bitCount(m & ALL);
+			int base = edgeCount;
+			edgeCount += edges;
+			if (edgeCount > target.length) {
+				target = Arrays.copyOf(target, Math.max(edgeCount, target.length * 2));
+				rank = Arrays.copyOf(rank, target.length);
+			}
+			mask[node] = m;
+			first[node] = base;
+
+			// one child per run of words that share the next letter
+			int e = 0;
+			int i = lo;
+			while (i < hi) {
+				char c = words.get(i).charAt(depth);
+				int j = i + 1;
+				while (j < hi && words.get(j).charAt(depth) == c) j++;
+				int child = addNode(words, i, j, depth + 1);
+				target[base + e] = child;
+				rank[base + e] = i - start;
+				e++;
+				i = j;
+			}
+
+			return node;
+		}
+
+		// merges nodes that have the same mask and the same targets. children always
+		// come after their parents, so going backwards every child is already merged
+		// by the time its parents are looked at. the first node of each group keeps it
+		// (the root is in a group of its own, so it's still node 0)
+		private void minimize() {
+			int[] same = new int[nodeCount];
+			HashMap<Signature, Integer> seen = new HashMap<Signature, Integer>();
+			for (int node = nodeCount - 1; node >= 0; node--) {
+				int edges = Integer.bitCount(mask[node] & ALL);
+				int[] key = new int[edges + 1];
+				key[0] = mask[node];
+				for (int e = 0; e < edges; e++) {
+					key[e + 1] = same[target[first[node] + e]];
+				}
+				Signature s = new Signature(key);
+				Integer other = seen.get(s);
+				if (other != null) {
+					same[node] = other;
+				}
+				else {
+					seen.put(s, node);
+					same[node] = node;
+				}
+			}
+
+			// number the nodes that are left in the order they were, and copy them down
+			int[] renumbered = new int[nodeCount];
+			int nodes = 0;
+			for (int node = 0; node < nodeCount; node++) {
+				if (same[node] == node) renumbered[node] = nodes++;
+			}
+			int edges = 0;
+			for (int node = 0; node < nodeCount; node++) {
+				if (same[node] != node) continue;
+				int n = renumbered[node];
+				int count = Integer.bitCount(mask[node] & ALL);
+				int from = first[node];
+				mask[n] = mask[node];
+				first[n] = edges;
+				for (int e = 0; e < count; e++) {
+					target[edges + e] = renumbered[same[target[from + e]]];
+					rank[edges + e] = rank[from + e];
+				}
+				edges += count;
+			}
+			nodeCount = nodes;
+			edgeCount = edges;
+		}
+	}
+
+	// a node's mask and targets, as a hash key
+	private static class Signature {
+		private int[] key;
+
+		Signature(int[] key) {
+			this.key = key;
+		}
+
+		public int hashCode() {
+			return Arrays.hashCode(key);
+		}
+
+		public boolean equals(Object o) {
+			return o instanceof Signature && Arrays.equals(key, ((Signature) o).key);
+		}
+	}
+
+	// follow the edge for 'letter' (0 for 'a' ... 25 for 'z'), or NONE if there is none
+	public int child(int node, int letter) {
+		int m = mask.get(node);
+		int bit = 1 << letter;
+		if ((m & bit) == 0) return NONE;
+		return target.get(first.get(node) + Integer.bitCount(m & (bit - 1)));
+	}
+
+	// how many words (from 'node' on) sort before the ones through the edge for
+	// 'letter', which has to be one of edges(node)
+	public int rank(int node, int letter) {
+		int m = mask.get(node);
+		return rank.get(first.get(node) + Integer.bitCount(m & ((1 << letter) - 1)));
+	}
+
+	// mask of the letters that can follow 'node'
+	public int edges(int node) {
+		return mask.get(node) & ALL;
+	}
+
+	// does the path to 'node' spell a word?
+	public boolean terminal(int node) {
+		return (mask.get(node) & TERMINAL) != 0;
+	}
+
+	// follow all of the letters in 's' starting at 'node', returns NONE if we fall off
+	public int walk(int node, CharSequence s) {
+		for (int i = 0; i < s.length() && node != NONE; i++) {
+			int letter = s.charAt(i) - 'a';
+			if (letter < 0 || letter >= 26) return NONE;
+			node = child(node, letter);
+		}
+		return node;
+	}
+
+	public boolean contains(CharSequence word) {
+		int node = walk(ROOT, word);
+		return node != NONE && terminal(node);
+	}
+
+	// the position of 'word' in the sorted list of words, or NONE if it isn't one
+	public int id(CharSequence word) {
+		int node = ROOT;
+		int id = 0;
+		for (int i = 0; i < word.length(); i++) {
+			int letter = word.charAt(i) - 'a';
+			if (letter < 0 || letter >= 26) return NONE;
+			int next = child(node, letter);
+			if (next == NONE) return NONE;
+			id += rank(node, letter);
+			node = next;
+		}
+		return terminal(node) ? id : NONE;
+	}
+
+	// the word at position 'id' in the sorted list of words (see id)
+	public String word(int id) {
+		StringBuilder b = new StringBuilder();
+		int node = ROOT;
+		while (!(terminal(node) && id == 0)) {
+			// follow the last edge that doesn't start past 'id'
+			int m = mask.get(node) & ALL;
+			int edge = first.get(node);
+			int letter = -1;
+			for (int l = 0; l < 26; l++) {
+				if ((m & (1 << l)) == 0) continue;
+				if (rank.get(edge) > id) break;
+				letter = l;
+				edge++;
+			}
+			edge--;
+			id -= rank.get(edge);
+			node = target.get(edge);
+			b.append((char) ('a' + letter));
+		}
+		return b.toString();
+	}
+
+	public int size() {
+		return nodeCount;
+	}
+}
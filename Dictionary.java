@@ -0,0 +1,353 @@
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+// The word list, in the two shapes the board needs:
+// - a letter graph (see Dawg.java) for move generation and checking words
+// - anagram classes: the words grouped by their sorted letters ("key"), for finding
+//   every word that can be made out of a set of letters
+//
+// Building these from dictionary.txt means sorting the letters of every word and
+// allocating a few hundred thousand objects, which used to be most of the time spent
+// on every command. "compile-dictionary" writes them out as one binary file instead,
+// which load() memory maps and uses as-is.
+//
+// Keys are sorted by length, and each one has a signature so that most keys can be
+// ruled out for a rack without looking at their letters (see shortfall):
+// - a mask of the letters in it (bit 0 for 'a'), with the MANY bit set if it has more
+//   than 7 of some letter ("stresslessnesses" has 8 s's)
+// - its letter counts packed into two longs, 4 bits per letter ('a'-'m' and 'n'-'z').
+//   counts over 7 don't fit, so MANY keys are checked letter by letter instead
+//
+// File layout (all numbers little endian):
+//   int magic, int version
+//   graph (see Dawg.write)
+//   int keyCount, int wordCount, int maxLength
+//   int keyFirst[keyCount + 1]   - words of key k are keyFirst[k] until keyFirst[k+1]
+//   int lengthEnd[maxLength + 1] - keys with up to L letters are 0 until lengthEnd[L]
+//   int keyMask[keyCount]
+//   long keyCounts[keyCount * 2] - the packed counts of key k are at 2k and 2k+1
+//   int wordIds[wordCount]       - the words, sorted by key, then by word, as their ids
+//                                  in the graph (see Dawg.id), which spells them out
+public class Dictionary {
+
+	private static final int MAGIC = 0x44524353; // "SCRD"
+	private static final int VERSION = 5;
+
+	// the compiled file that load() looks for next to the classes
+	public static final String COMPILED = "dictionary.bin";
+
+	// the plain word list, one word per line
+	public static final String SOURCE = "dictionary.txt";
+
+	public Dawg graph;
+
+	private int keyCount;
+	private int wordCount;
+	private int maxLength;
+	private IntBuffer keyFirst;
+	private IntBuffer lengthEnd;
+	private IntBuffer keyMask;
+	private LongBuffer keyCounts;
+	private IntBuffer wordIds;
+
+	// loads the compiled dictionary if there is one, otherwise compiles dictionary.txt
+	// in memory
+	public static Dictionary load() throws IOException {
+		URL url = Dictionary.class.getResource(COMPILED);
+		if (url != null) {
+			try {
+				if (url.getProtocol().equals("file")) {
+					return map(new File(url.toURI()));
+				}
+				else {
+					// inside a jar, so no mapping, but it's still just one read
+					return read(readAll(url.openStream()));
+				}
+			} catch (Exception ex) {
+				System.err.println("couldn't use " + COMPILED + ", reading " + SOURCE + " instead: " + ex.getMessage());
+			}
+		}
+
+		return compile(readWords());
+	}
+
+	// the words in dictionary.txt
+	public static ArrayList<String> readWords() throws IOException {
+		ArrayList<String> words = new ArrayList<String>();
+		BufferedReader input = null;
+		try {
+			InputStream in = Dictionary.class.getResourceAsStream(SOURCE);
+			input = new BufferedReader(new InputStreamReader(in));
+			String word;
+			while ((word = input.readLine()) != null) {
+				words.add(word);
+			}
+		} finally {
+			if (input != null) {
+				input.close();
+			}
+		}
+		return words;
+	}
+
+	// builds the compiled form of 'words' in memory
+	public static Dictionary compile(List<String> words) {
+		// sort the words by length, then their key, then the word itself, so that
+		// every anagram class is one run of words
+		String[] sorted = new String[words.size()];
+		int n = 0;
+		int maxLength = 0;
+		for (String w : words) {
+			if (w.length() == 0) continue;
+			char[] key = w.toCharArray();
+			Arrays.sort(key);
+			sorted[n++] = new String(key) + " " + w;
+			maxLength = Math.max(maxLength, w.length());
+		}
+		sorted = Arrays.copyOf(sorted, n);
+		Arrays.sort(sorted, new Comparator<String>() {
+			public int compare(String a, String b) {
+				if (a.length() != b.length()) return a.length() - b.length();
+				return a.compareTo(b);
+			}
+		});
+
+		int[] keyFirst = new int[n + 1];
+		int[] lengthEnd = new int[maxLength + 1];
+		int[] keyMask = new int[n];
+		long[] keyCounts = new long[n * 2];
+		Dawg graph = Dawg.build(words);
+		int[] wordIds = new int[n];
+		int keys = 0;
+		String lastKey = null;
+		int[] counts = new int[26];
+		for (int i = 0; i < n; i++) {
+			int space = sorted[i].indexOf(' ');
+			String key = sorted[i].substring(0, space);
+			if (!key.equals(lastKey)) {
+				Arrays.fill(counts, 0);
+				for (int j = 0; j < key.length(); j++) {
+					counts[key.charAt(j) - 'a']++;
+					keyMask[keys] |= 1 << (key.charAt(j) - 'a');
+					if (counts[key.charAt(j) - 'a'] > 7) keyMask[keys] |= MANY;
+				}
+				keyCounts[keys * 2] = pack(counts, 0);
+				keyCounts[keys * 2 + 1] = pack(counts, 13);
+				keyFirst[keys++] = i;
+				lastKey = key;
+			}
+			lengthEnd[key.length()] = keys;
+			wordIds[i] = graph.id(sorted[i].substring(space + 1));
+		}
+		keyFirst[keys] = n;
+		
+		// lengths with no words at all end where the shorter ones did
+		for (int l = 1; l <= maxLength; l++) {
+			lengthEnd[l] = Math.max(lengthEnd[l], lengthEnd[l - 1]);
+		}
+
+		Dictionary d = new Dictionary();
+		d.graph = graph;
+		d.keyCount = keys;
+		d.wordCount = n;
+		d.maxLength = maxLength;
+		d.keyFirst = IntBuffer.wrap(Arrays.copyOf(keyFirst, keys + 1));
+		d.lengthEnd = IntBuffer.wrap(lengthEnd);
+		d.keyMask = IntBuffer.wrap(Arrays.copyOf(keyMask, keys));
+		d.keyCounts = LongBuffer.wrap(Arrays.copyOf(keyCounts, keys * 2));
+		d.wordIds = IntBuffer.wrap(wordIds);
+		return d;
+	}
+
+	// memory maps a file written by save()
+	public static Dictionary map(File file) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		} finally {
+			// the mapping stays valid after the channel is closed
+			channel.close();
+		}
+	}
+
+	// reads a dictionary out of the bytes written by save(), without copying them
+	private static Dictionary read(ByteBuffer in) throws IOException {
+		in.order(ByteOrder.LITTLE_ENDIAN);
+		if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+			throw new IOException("not a compiled dictionary (or the wrong version)");
+		}
+
+		Dictionary d = new Dictionary();
+		d.graph = Dawg.read(in);
+		d.keyCount = in.getInt();
+		d.wordCount = in.getInt();
+		d.maxLength = in.getInt();
+		d.keyFirst = ints(in, d.keyCount + 1);
+		d.lengthEnd = ints(in, d.maxLength + 1);
+		d.keyMask = ints(in, d.keyCount);
+		d.keyCounts = longs(in, d.keyCount * 2);
+		d.wordIds = ints(in, d.wordCount);
+		return d;
+	}
+
+	private static IntBuffer ints(ByteBuffer in, int count) {
+		ByteBuffer b = in.slice().order(in.order());
+		b.limit(count * 4);
+		in.position(in.position() + count * 4);
+		return b.asIntBuffer();
+	}
+
+	private static LongBuffer longs(ByteBuffer in, int count) {
+		ByteBuffer b = in.slice().order(in.order());
+		b.limit(count * 8);
+		in.position(in.position() + count * 8);
+		return b.asLongBuffer();
+	}
+
+	private static ByteBuffer readAll(InputStream in) throws IOException {
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buf = new byte[65536];
+			int n;
+			while ((n = in.read(buf)) > 0) {
+				out.write(buf, 0, n);
+			}
+			return ByteBuffer.wrap(out.toByteArray());
+		} finally {
+			in.close();
+		}
+	}
+
+	// writes the compiled form to 'fileName'
+	public void save(String fileName) throws IOException {
+		int size = 8 + graph.byteSize() + 12 + (keyCount + 1 + maxLength + 1 + keyCount + wordCount) * 4 
+				+ keyCount * 16;
+		ByteBuffer out = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+
+		out.putInt(MAGIC);
+		out.putInt(VERSION);
+		graph.write(out);
+		out.putInt(keyCount);
+		out.putInt(wordCount);
+		out.putInt(maxLength);
+		for (int i = 0; i <= keyCount; i++) out.putInt(keyFirst.get(i));
+		for (int i = 0; i <= maxLength; i++) out.putInt(lengthEnd.get(i));
+		for (int i = 0; i < keyCount; i++) out.putInt(keyMask.get(i));
+		for (int i = 0; i < keyCount * 2; i++) out.putLong(keyCounts.get(i));
+		for (int i = 0; i < wordCount; i++) out.putInt(wordIds.get(i));
+
+		FileOutputStream fos = new FileOutputStream(fileName);
+		try {
+			fos.write(out.array());
+		} finally {
+			fos.close();
+		}
+	}
+
+	public int size() {
+		return wordCount;
+	}
+
+	public boolean contains(CharSequence word) {
+		return graph.contains(word);
+	}
+
+	// number of anagram classes
+	public int keys() {
+		return keyCount;
+	}
+
+	// number of anagram classes with at most 'length' letters, which come first
+	public int keysUpTo(int length) {
+		return lengthEnd.get(Math.min(length, maxLength));
+	}
+
+	// how many letters of 'key' 'rack' is short: 0 if it has them all. 'mask' and
+	// 'lo'/'hi' are the rack's signature (see Rack.mask and Rack.packed). anything over
+	// 'limit' is not counted exactly, it's just some number over 'limit'
+	public int shortfall(int key, Rack rack, int mask, long lo, long hi, int limit) {
+		// letters we don't have at all are each at least one short
+		int bits = keyMask.get(key);
+		int absent = Integer.bitCount(bits & ~mask & ~MANY);
+		if (absent > limit) return absent;
+		
+		if ((bits & MANY) != 0) {
+			// the packed counts are capped at 7, so count the real ones
+			int short_ = 0;
+			for (int l = 0; l < 26; l++) {
+				short_ += Math.max(0, count(key, l) - rack.count(l));
+			}
+			return short_;
+		}
+
+		// subtract our counts from the key's counts, 4 bits per letter with a guard 
+		// bit on top: the guard bit survives where the key needs at least as many of
+		// that letter as we have, and then the 3 bits below it say how many more
+		long l = (keyCounts.get(key * 2) | GUARDS) - lo;
+		long h = (keyCounts.get(key * 2 + 1) | GUARDS) - hi;
+		return nibbleSum(l & ((l & GUARDS) >>> 3) * 7) + nibbleSum(h & ((h & GUARDS) >>> 3) * 7);
+	}
+
+	// in keyMask, for keys with more than 7 of some letter
+	private static final int MANY = 1 << 31;
+
+	// the guard bit of each of the 13 letters in a packed count
+	private static final long GUARDS = 0x0008888888888888L;
+
+	// packs counts[first] to counts[first + 12] into 4 bits each, lowest letter in the
+	// lowest bits. counts are capped at 7, so the guard bit above them stays free (see
+	// shortfall, and MANY for the keys that have more)
+	public static long pack(int[] counts, int first) {
+		long packed = 0;
+		for (int i = 0; i < 13; i++) {
+			packed |= (long) Math.min(counts[first + i], 7) << (i * 4);
+		}
+		return packed;
+	}
+
+	// adds up the 4 bit fields of 'v'
+	private static int nibbleSum(long v) {
+		v = (v & 0x0F0F0F0F0F0F0F0FL) + ((v >>> 4) & 0x0F0F0F0F0F0F0F0FL);
+		return (int) ((v * 0x0101010101010101L) >>> 56);
+	}
+
+	// the words of anagram class 'key' are the ids firstWord(key) until firstWord(key+1)
+	public int firstWord(int key) {
+		return keyFirst.get(key);
+	}
+
+	// how many of 'letter' (0 for 'a') there are in 'key'
+	public int count(int key, int letter) {
+		if ((keyMask.get(key) & MANY) != 0) {
+			// more than fits in the packed counts, so count them in one of its words
+			String word = word(firstWord(key));
+			int count = 0;
+			for (int i = 0; i < word.length(); i++) {
+				if (word.charAt(i) - 'a' == letter) count++;
+			}
+			return count;
+		}
+		long packed = keyCounts.get(key * 2 + letter / 13);
+		return (int) (packed >>> (letter % 13 * 4)) & 15;
+	}
+
+	public String word(int id) {
+		return graph.word(wordIds.get(id));
+	}
+}
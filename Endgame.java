@@ -0,0 +1,330 @@
+import java.util.ArrayList;
+import java.util.Random;
+
+// Plays out the end of a game exactly. Once the bag is empty, the opponent's rack is
+// whatever tiles aren't on the board or on ours, so both sides' moves are known and
+// the rest of the game is a two player search with nothing left to chance:
+// - negamax with alpha-beta pruning. a node's value is the spread (our points minus
+//   theirs, from the player to move's side) over the rest of the game
+// - moves are tried best score first (Board.best sorts them), after the best move
+//   the transposition table has for the position, and passing last
+// - the transposition table is keyed by a Zobrist hash of the board, both racks and
+//   whose turn it is, which is updated move by move rather than recomputed
+// - iterative deepening: search 1 ply deep, then 2, ... until the search reaches the
+//   end of the game everywhere (then the result is exact) or time runs out (then the
+//   deepest search that finished is the answer)
+//
+// The game ends when a player plays out (they get the value of the other's tiles, and
+// the other loses it), or when both pass in a row (each loses the value of their own).
+// At the depth limit, a position counts as even from there.
+//
+// Moves are generated by the same search as findBest, which doesn't change the board.
+// Each move is played on a copy of its position.
+public class Endgame {
+
+	// a pass (see MoveList.PASS)
+	public static final long PASS = MoveList.PASS;
+
+	private static final int MAX_PLY = 64;
+
+	// "depth" of positions that were searched to the end of the game
+	private static final int SOLVED = Byte.MAX_VALUE;
+
+	// the transposition table, 2^TABLE_BITS entries
+	private static final int TABLE_BITS = 20;
+	private static final byte EXACT = 0;
+	private static final byte LOWER = 1;
+	private static final byte UPPER = 2;
+
+	private Board board;
+	private Rules rules;
+	private int size;
+
+	// 0 is us (to move), 1 is them
+	private Rack[] racks;
+
+	// Zobrist keys: a tile (26 + letter for blanks) on a square, a count of a letter on
+	// a player's rack, the other player to move, and one pass in a row
+	private long[][] squareKeys;
+	private long[][][] rackKeys;
+	private long sideKey;
+	private long passKey;
+
+	private long[] tableKeys;
+	private long[] tableMoves;
+	private int[] tableValues;
+	private byte[] tableDepths;
+	private byte[] tableFlags;
+
+	private long deadline;
+	private boolean timedOut;
+
+	// set when the search stopped at the depth limit somewhere, instead of at the end
+	// of the game
+	private boolean horizon;
+
+	// the result of the deepest finished search: the best line (PASS for a pass), the
+	// spread it gets us, and how deep it went
+	public ArrayList<Long> line = new ArrayList<Long>();
+	public int spread;
+	public int depth;
+	public boolean exact;
+	public long nodes;
+
+	// 'board' is the position with us to move, holding 'ours'. null if the bag isn't
+	// empty yet (there are more unseen tiles than fit on the opponent's rack), or the
+	// game is already over
+	public static Endgame create(Board board, Rack ours) {
+		Rules rules = board.rules();
+		Rack theirs = ours.unseen(board);
+		if (theirs.size() > rules.rackSize) {
+			System.err.printf("the bag isn't empty: %d tiles are unseen\n", theirs.size());
+			return null;
+		}
+		if (theirs.size() == 0 || ours.size() == 0) {
+			System.err.println("a rack is empty, the game is over");
+			return null;
+		}
+		return new Endgame(board, ours, theirs);
+	}
+
+	public Endgame(Board board, Rack ours, Rack theirs) {
+		this.board = board;
+		rules = board.rules();
+		size = rules.size;
+		racks = new Rack[] { ours, theirs };
+
+		Random random = new Random(0x5CAB);
+		squareKeys = new long[size * size][52];
+		for (long[] keys : squareKeys) {
+			for (int t = 0; t < keys.length; t++) keys[t] = random.nextLong();
+		}
+		rackKeys = new long[2][27][16];
+		for (long[][] side : rackKeys) {
+			for (long[] keys : side) {
+				for (int n = 0; n < keys.length; n++) keys[n] = random.nextLong();
+			}
+		}
+		sideKey = random.nextLong();
+		passKey = random.nextLong();
+
+		tableKeys = new long[1 << TABLE_BITS];
+		tableMoves = new long[1 << TABLE_BITS];
+		tableValues = new int[1 << TABLE_BITS];
+		tableDepths = new byte[1 << TABLE_BITS];
+		tableFlags = new byte[1 << TABLE_BITS];
+	}
+
+	// searches deeper and deeper until the result is exact, 'maxDepth' plies have been
+	// searched, or 'millis' have gone by (if that's more than 0)
+	public void solve(int maxDepth, long millis) {
+		deadline = millis > 0 ? System.nanoTime() + millis * 1000000 : Long.MAX_VALUE;
+		timedOut = false;
+		long hash = hash(board);
+
+		for (int d = 1; d <= Math.min(maxDepth, MAX_PLY) && !exact; d++) {
+			horizon = false;
+			int value = search(board, racks, 0, 0, d, -Integer.MAX_VALUE, Integer.MAX_VALUE, hash, 0);
+			if (timedOut) break;
+
+			spread = value;
+			depth = d;
+			exact = !horizon;
+			line(hash);
+		}
+	}
+
+	// follows the best moves in the table from the start, to get the line that the 
+	// search found
+	private void line(long hash) {
+		line.clear();
+		Board b = board;
+		Rack[] racks = this.racks;
+		int side = 0;
+		int passes = 0;
+		while (line.size() < MAX_PLY) {
+			int slot = (int) (hash & ((1 << TABLE_BITS) - 1));
+			if (tableKeys[slot] != hash) break;
+			long move = tableMoves[slot];
+			line.add(move);
+
+			if (move == PASS) {
+				if (passes > 0) break;
+				hash ^= sideKey ^ passKey;
+				passes = 1;
+			}
+			else {
+				Word w = b.word(move);
+				Rack left = racks[side].copy();
+				hash = played(b, w, side, left, hash);
+				if (left.size() == 0) break;
+				if (passes > 0) hash ^= passKey;
+				passes = 0;
+				b = b.copy();
+				b.play(w);
+				racks = side == 0 ? new Rack[] { left, racks[1] } : new Rack[] { racks[0], left };
+			}
+			side = 1 - side;
+		}
+	}
+
+	// the value of 'b' for the player 'side' to move, who has passed 'passes' times in
+	// a row (with the other player's passes in between), searched 'depth' more plies
+	private int search(Board b, Rack[] racks, int side, int passes, int depth, int alpha, int beta,
+			long hash, int ply) {
+		nodes++;
+		if ((nodes & 15) == 0 && System.nanoTime() > deadline) timedOut = true;
+		if (timedOut) return 0;
+
+		Rack mine = racks[side];
+		Rack theirs = racks[1 - side];
+		int theirValue = theirs.value(rules.letterValues);
+
+		// what we already know about this position
+		int slot = (int) (hash & ((1 << TABLE_BITS) - 1));
+		boolean hit = tableKeys[slot] == hash;
+		long tableMove = hit ? tableMoves[slot] : PASS;
+		if (hit && tableDepths[slot] >= depth && ply > 0) {
+			int value = tableValues[slot];
+			if (tableDepths[slot] < SOLVED) horizon = true;
+			if (tableFlags[slot] == EXACT) return value;
+			if (tableFlags[slot] == LOWER && value >= beta) return value;
+			if (tableFlags[slot] == UPPER && value <= alpha) return value;
+		}
+
+		// whether anything below here stops at the depth limit
+		boolean outer = horizon;
+		horizon = false;
+
+		int start = alpha;
+		int best = -Integer.MAX_VALUE;
+		long bestMove = PASS;
+		MoveList moves = b.best(mine, 0);
+		if (hit && tableMove != PASS && !contains(moves, tableMove)) tableMove = PASS;
+
+		// the table's move, then the others by score, then passing
+		for (int k = -1; k <= moves.size(); k++) {
+			long move;
+			if (k < 0) {
+				if (tableMove == PASS) continue;
+				move = tableMove;
+			}
+			else if (k < moves.size()) {
+				move = moves.get(k);
+				if (move == tableMove) continue;
+				// one ply from the limit, nothing that scores less can do better,
+				// even by playing out
+				if (depth == 1 && MoveList.score(move) + 2 * theirValue <= best) {
+					horizon = true;
+					break;
+				}
+			}
+			else {
+				move = PASS;
+			}
+
+			int value;
+			if (move == PASS) {
+				if (passes > 0) {
+					// both passed, the game is over
+					value = theirValue - mine.value(rules.letterValues);
+				}
+				else if (depth == 1) {
+					horizon = true;
+					value = 0;
+				}
+				else {
+					long child = hash ^ sideKey ^ passKey;
+					value = -search(b, racks, 1 - side, 1, depth - 1, -beta, -alpha, child, ply + 1);
+				}
+			}
+			else {
+				Word w = b.word(move);
+				Rack left = mine.copy();
+				long child = played(b, w, side, left, hash);
+
+				if (left.size() == 0) {
+					// we played out
+					value = w.score + 2 * theirValue;
+				}
+				else if (depth == 1) {
+					horizon = true;
+					value = w.score;
+				}
+				else {
+					if (passes > 0) child ^= passKey;
+					Board next = b.copy();
+					next.play(w);
+					Rack[] after = side == 0 ? new Rack[] { left, theirs } : new Rack[] { theirs, left };
+					value = w.score - search(next, after, 1 - side, 0, depth - 1, w.score - beta, w.score - alpha,
+							child, ply + 1);
+				}
+			}
+			if (timedOut) return 0;
+
+			if (value > best) {
+				best = value;
+				bestMove = move;
+				if (value > alpha) alpha = value;
+				if (alpha >= beta) break;
+			}
+		}
+
+		boolean solved = !horizon;
+		horizon = outer || horizon;
+
+		tableKeys[slot] = hash;
+		tableMoves[slot] = bestMove;
+		tableValues[slot] = best;
+		tableDepths[slot] = (byte) (solved ? SOLVED : depth);
+		tableFlags[slot] = best <= start ? UPPER : best >= beta ? LOWER : EXACT;
+		return best;
+	}
+
+	// the hash of 'b' with us to move and no passes
+	private long hash(Board b) {
+		long hash = 0;
+		for (int row = 0; row < size; row++) {
+			for (int col = 0; col < size; col++) {
+				int tile = b.tile(row, col);
+				if (tile >= 0) hash ^= squareKeys[row * size + col][tile];
+			}
+		}
+		for (int side = 0; side < 2; side++) {
+			for (int l = 0; l < 27; l++) hash ^= rackKeys[side][l][racks[side].count(l)];
+		}
+		return hash;
+	}
+
+	// 'side' plays 'w' on 'b': takes the tiles it uses off 'rack', and returns 'hash'
+	// with them moved from the rack to the board, and the other side to move
+	private long played(Board b, Word w, int side, Rack rack, long hash) {
+		Rack used = b.tiles(w);
+		for (int l = 0; l < 27; l++) {
+			if (used.count(l) == 0) continue;
+			hash ^= rackKeys[side][l][rack.count(l)];
+			for (int i = 0; i < used.count(l); i++) rack.take(l);
+			hash ^= rackKeys[side][l][rack.count(l)];
+		}
+		hash ^= sideKey;
+
+		int dr = w.dir.equals("col") ? 1 : 0;
+		int dc = w.dir.equals("row") ? 1 : 0;
+		for (int i = 0; i < w.word.length(); i++) {
+			int row = w.row + dr * i;
+			int col = w.col + dc * i;
+			if (b.tile(row, col) >= 0) continue;
+			int tile = w.word.charAt(i) - 'a';
+			if (w.blankLetters().contains(i)) tile += 26;
+			hash ^= squareKeys[row * size + col][tile];
+		}
+		return hash;
+	}
+
+	private static boolean contains(MoveList moves, long move) {
+		for (int i = 0; i < moves.size(); i++) {
+			if (moves.get(i) == move) return true;
+		}
+		return false;
+	}
+}
@@ -0,0 +1,232 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.zip.CRC32;
+
+// Many games in one file, for when there are too many games to keep a file for each.
+// A game in a store is named "<store file>#<game id>" wherever a board file goes (see
+// Main.loadBoard), for example:
+//
+//   java Main games.store#42 play 8 8 hello row
+//
+// The file is memory mapped, and each game has a fixed place in it, so saving a game
+// writes its board where it is: no files are created or rewritten. The layout (all
+// numbers big endian, like Board.write):
+//
+//   int magic, byte version, int copy bytes     (HEADER bytes, the rest is unused)
+//   game 0: copy a, copy b                       (COPY bytes each)
+//   game 1: copy a, copy b
+//   ...
+//
+// and each copy is:
+//
+//   long sequence, int length, int crc, byte board[length] (see Board.write)
+//
+// where the crc (CRC32) covers the sequence, the length and the board. Saving a game
+// writes over its older copy, with a sequence one higher than the newer one's, and
+// forces it to disk before returning. If the process dies in the middle of that, the
+// copy's crc doesn't check out, and the game is read from its other copy, as it was
+// before. A copy that was never written has sequence 0, and a game that has neither
+// doesn't exist yet.
+//
+// The file grows (doubling) when a game past its end is saved, up to MAX_GAMES games.
+// The parts of it that no game has been saved to are holes in the file, so they don't
+// take up disk space. Another process (the command line, while the server has the
+// store open) may have grown it, so a game past the end of the mapping is looked for
+// in the file again before it counts as missing.
+//
+// A game whose copies were written to but neither checks out is damaged, not missing,
+// so get() refuses it instead of letting it be started over.
+//
+// Games are read and written under one of STRIPES locks, picked by game id, so saving
+// one game doesn't wait for games on the other stripes. Everything in the process that
+// uses the same file shares one store (see open).
+public class GameStore {
+
+	private static final int MAGIC = 0x53435247; // "SCRG"
+	private static final int VERSION = 1;
+
+	private static final int HEADER = 64;
+
+	// a copy's sequence, length and crc, then the board (461 bytes for 15x15)
+	private static final int COPY = 512;
+	private static final int BOARD = 16;
+
+	// games the file has room for when it's created
+	private static final int INITIAL_GAMES = 1024;
+
+	private static final int STRIPES = 64;
+
+	// the games that fit in one mapping (which can't be over 2 GB): ids 0 until this
+	public static final int MAX_GAMES = (int) ((Integer.MAX_VALUE - HEADER) / (2 * COPY));
+
+	// the stores that are open, by path
+	private static final HashMap<String, GameStore> stores = new HashMap<String, GameStore>();
+
+	private FileChannel channel;
+
+	// all of the file. replaced by a bigger one when the file grows (the old one still
+	// maps the same part of the file, so whoever is using it can finish)
+	private volatile MappedByteBuffer map;
+
+	private Object[] locks = new Object[STRIPES];
+
+	// the game id in 'name' ("<store file>#<id>"), or -1 if it doesn't name a game in a
+	// store. throws IllegalArgumentException for ids a store can't hold
+	public static int gameId(String name) {
+		int hash = name.lastIndexOf('#');
+		if (hash < 0 || !name.substring(hash + 1).matches("\\d{1,9}")) return -1;
+		int id = Integer.parseInt(name.substring(hash + 1));
+		if (id >= MAX_GAMES) {
+			throw new IllegalArgumentException(
+					String.format("game id too large for a game store (at most %d): %d", MAX_GAMES - 1, id));
+		}
+		return id;
+	}
+
+	// the store file in 'name' (see gameId)
+	public static String storeFile(String name) {
+		return name.substring(0, name.lastIndexOf('#'));
+	}
+
+	// the store in 'file', created if there is no such file. stays open (and mapped) for
+	// as long as the process runs
+	public static GameStore open(String file) throws IOException {
+		String path = new File(file).getCanonicalPath();
+		synchronized (stores) {
+			GameStore store = stores.get(path);
+			if (store == null) {
+				store = new GameStore(path);
+				stores.put(path, store);
+			}
+			return store;
+		}
+	}
+
+	// (package private so tests can open a second one, like another process would)
+	GameStore(String path) throws IOException {
+		for (int i = 0; i < STRIPES; i++) {
+			locks[i] = new Object();
+		}
+		channel = FileChannel.open(new File(path).toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		if (channel.size() == 0) {
+			// mapping past the end makes the file that long
+			map = channel.map(FileChannel.MapMode.READ_WRITE, 0, offset(INITIAL_GAMES));
+			map.putInt(0, MAGIC);
+			map.put(4, (byte) VERSION);
+			map.putInt(5, COPY);
+			map.force();
+		}
+		else {
+			map = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+			if (map.capacity() < HEADER || map.getInt(0) != MAGIC || map.get(4) != VERSION
+					|| map.getInt(5) != COPY) {
+				channel.close();
+				throw new IOException("not a game store (or the wrong version): " + path);
+			}
+		}
+	}
+
+	// the game 'id' as it was last saved, or null if it never was
+	public Board get(int id) throws IOException {
+		MappedByteBuffer map = mapped(id);
+		if (map == null) return null;
+
+		int at = (int) offset(id);
+		synchronized (locks[id % STRIPES]) {
+			long a = sequence(map, at);
+			long b = sequence(map, at + COPY);
+			if (a == 0 && b == 0) {
+				if (map.getLong(at) == 0 && map.getLong(at + COPY) == 0) return null;
+				throw new IOException("game " + id + " is damaged, neither of its copies checks out");
+			}
+
+			int newer = a > b ? at : at + COPY;
+			return Board.read(map.slice(newer + BOARD, map.getInt(newer + 8)));
+		}
+	}
+
+	// saves 'b' as the game 'id', and waits for it to be on disk
+	public void put(int id, Board b) throws IOException {
+		ByteBuffer board = ByteBuffer.allocate(b.byteSize());
+		b.write(board);
+		if (BOARD + board.capacity() > COPY) {
+			throw new IOException("board too big for a game store");
+		}
+		MappedByteBuffer map = room(id);
+
+		int at = (int) offset(id);
+		synchronized (locks[id % STRIPES]) {
+			long a = sequence(map, at);
+			long c = sequence(map, at + COPY);
+			int older = a <= c ? at : at + COPY;
+
+			map.put(older + BOARD, board.array());
+			map.putInt(older + 8, board.capacity());
+			map.putLong(older, Math.max(a, c) + 1);
+			map.putInt(older + 12, crc(map, older, board.capacity()));
+			map.force(older, BOARD + board.capacity());
+		}
+	}
+
+	// where game 'id' starts in the file
+	private static long offset(int id) {
+		return HEADER + (long) id * 2 * COPY;
+	}
+
+	// the mapping, if the file reaches game 'id' (mapped again if the file has grown
+	// since it was mapped), or null if it doesn't
+	private MappedByteBuffer mapped(int id) throws IOException {
+		MappedByteBuffer map = this.map;
+		if (offset(id + 1) <= map.capacity()) return map;
+
+		synchronized (this) {
+			long size = Math.min(channel.size(), Integer.MAX_VALUE);
+			if (size > this.map.capacity()) {
+				this.map = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			}
+			return offset(id + 1) <= this.map.capacity() ? this.map : null;
+		}
+	}
+
+	// the mapping, grown to have room for game 'id' if it doesn't yet
+	private MappedByteBuffer room(int id) throws IOException {
+		if (id < 0 || id >= MAX_GAMES) {
+			throw new IOException("game id too large for a game store: " + id);
+		}
+		MappedByteBuffer map = mapped(id);
+		if (map != null) return map;
+
+		synchronized (this) {
+			long size = this.map.capacity();
+			while (size < offset(id + 1)) {
+				size = Math.min(size * 2, Integer.MAX_VALUE);
+			}
+			if (size > this.map.capacity()) {
+				this.map = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			}
+			return this.map;
+		}
+	}
+
+	// the sequence of the copy at 'at', or 0 if it was never written or doesn't check
+	// out
+	private static long sequence(MappedByteBuffer map, int at) {
+		long sequence = map.getLong(at);
+		int length = map.getInt(at + 8);
+		if (sequence == 0 || length <= 0 || BOARD + length > COPY) return 0;
+		return map.getInt(at + 12) == crc(map, at, length) ? sequence : 0;
+	}
+
+	private static int crc(MappedByteBuffer map, int at, int length) {
+		CRC32 crc = new CRC32();
+		crc.update(map.slice(at, 12));
+		crc.update(map.slice(at + BOARD, length));
+		return (int) crc.getValue();
+	}
+}
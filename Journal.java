@@ -0,0 +1,373 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.zip.CRC32;
+
+// The history of a game, kept in the game's file as records that only ever get added
+// to the end, instead of the whole board being written out after every command. This
+// is the layout (all numbers big endian, like Board.write):
+//
+//   int magic, byte version
+//   records: byte type, short length, byte payload[length], int crc
+//
+// The crc (CRC32) covers the type, the length and the payload. The records are:
+//   CHECKPOINT  the whole board, as Board.write saves it. the first record, and then
+//               every CHECKPOINT_EVERY moves, so that getting the board for any turn
+//               never has to replay many moves
+//   LOAD        the whole board, like CHECKPOINT, after "load" replaced it
+//   MOVE        byte row, byte col, byte dir (1 for "row"), short score,
+//               short blank mask, letters
+//   BLANK       byte row, byte col: the tile there was turned into a blank or back
+//   UNDO        int records: the game goes back to how it was after its first
+//               'records' records (of the history as it was then)
+//
+// Each change is one record, appended with one write and made durable with one fsync
+// before the command returns. A move is about 20 bytes. If that fails, the command
+// fails (with an UncheckedIOException, since it comes out of play, undo...) and the
+// record is taken back off the file, so the file never has anything that didn't
+// happen, or a partial record that later ones would hide behind.
+//
+// The records of the current history (without what was undone) are kept in memory, so
+// the board for any turn is the checkpoint before it plus the moves after it, played
+// without checking them again (they were checked when they were played), which takes
+// microseconds.
+//
+// A turn, for undo and history, is a MOVE or a LOAD: undoing a load brings back the
+// board from before it, like undoing a move takes the move back. Only the first
+// record can't be undone, it's the board the journal started from. (Version 1 files
+// have no LOAD records, their loads are CHECKPOINTs, which undo goes past like any
+// other. They're marked version 2 when the first LOAD is added to them.)
+//
+// If the last record was only partly written (the process died in the middle of it),
+// its length or crc doesn't check out when the file is opened, so it's cut off and the
+// game goes on from the record before it.
+public class Journal {
+
+	private static final int MAGIC = 0x4A524353; // "SCRJ"
+	private static final int VERSION = 2;
+
+	private static final byte CHECKPOINT = 1;
+	private static final byte MOVE = 2;
+	private static final byte BLANK = 3;
+	private static final byte UNDO = 4;
+	private static final byte LOAD = 5;
+
+	// moves between checkpoints
+	public static final int CHECKPOINT_EVERY = 16;
+
+	// type, length and crc
+	private static final int OVERHEAD = 7;
+
+	private FileChannel channel;
+
+	// of the file, which only has LOAD records if it's VERSION
+	private byte version = VERSION;
+
+	// the current history: each record's type, followed by its payload
+	private ArrayList<byte[]> records = new ArrayList<byte[]>();
+
+	private Journal(FileChannel channel) {
+		this.channel = channel;
+	}
+
+	// is 'in' (from its position) a journal?
+	public static boolean isJournal(ByteBuffer in) {
+		return in.remaining() >= 4 && in.getInt(in.position()) == MAGIC;
+	}
+
+	// starts a journal for 'b' in 'file', replacing whatever is there. the new file is
+	// written next to it first, so the old one stays until the new one is complete
+	public static Journal create(String file, Board b) throws IOException {
+		Path path = Paths.get(file);
+		Path temp = Paths.get(file + ".new");
+		FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			ByteBuffer header = ByteBuffer.allocate(5);
+			header.putInt(MAGIC);
+			header.put((byte) VERSION);
+			header.flip();
+			write(channel, header);
+			Journal journal = new Journal(channel);
+			journal.checkpoint(b);
+		} catch (UncheckedIOException ex) {
+			throw ex.getCause();
+		} finally {
+			channel.close();
+		}
+		Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		return open(file);
+	}
+
+	// reads the journal in 'file', and keeps it open to add to it
+	public static Journal open(String file) throws IOException {
+		FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ, StandardOpenOption.WRITE);
+		ByteBuffer in = ByteBuffer.allocate((int) channel.size());
+		while (in.hasRemaining() && channel.read(in) >= 0) {
+			// keep reading
+		}
+		in.flip();
+
+		byte version = in.remaining() < 5 || in.getInt() != MAGIC ? 0 : in.get();
+		if (version != 1 && version != VERSION) {
+			channel.close();
+			throw new IOException("not a journal (or the wrong version): " + file);
+		}
+
+		Journal journal = new Journal(channel);
+		int good = in.position();
+		CRC32 crc = new CRC32();
+		while (in.remaining() >= OVERHEAD) {
+			int start = in.position();
+			byte type = in.get();
+			int length = in.getShort() & 0xFFFF;
+			if (in.remaining() < length + 4) break;
+
+			byte[] record = new byte[length + 1];
+			record[0] = type;
+			in.get(record, 1, length);
+			crc.reset();
+			crc.update(in.array(), start, 3 + length);
+			if (in.getInt() != (int) crc.getValue()) break;
+
+			journal.apply(record);
+			good = in.position();
+		}
+
+		if (journal.records.isEmpty() || journal.records.get(0)[0] != CHECKPOINT) {
+			channel.close();
+			throw new IOException("journal has no board to start from: " + file);
+		}
+		if (good < channel.size()) {
+			System.err.printf("%s: dropping %d bytes of a record that wasn't written completely\n", file,
+					channel.size() - good);
+			channel.truncate(good);
+			channel.force(true);
+		}
+		journal.version = version;
+		channel.position(good);
+		return journal;
+	}
+
+	public void close() {
+		try {
+			channel.close();
+		} catch (IOException ex) {
+			// nothing left to do with it
+		}
+	}
+
+	// the board as of now
+	public Board board() {
+		return replay(records.size());
+	}
+
+	// how many turns (moves and loads) the current history has that can be undone
+	public int turns() {
+		int turns = 0;
+		for (int i = 1; i < records.size(); i++) {
+			if (isTurn(records.get(i))) turns++;
+		}
+		return turns;
+	}
+
+	// the turns of the current history, in order: the moves with their scores, and the
+	// loads
+	public ArrayList<String> history() {
+		ArrayList<String> turns = new ArrayList<String>();
+		for (int i = 1; i < records.size(); i++) {
+			byte[] record = records.get(i);
+			if (record[0] == MOVE) turns.add(word(record).toString());
+			else if (record[0] == LOAD) turns.add("(loaded a board)");
+		}
+		return turns;
+	}
+
+	// 'w' (0-based location) was just played on 'b'
+	public void played(Board b, Word w) {
+		int blanks = 0;
+		for (int i : w.blankLetters()) {
+			blanks |= 1 << i;
+		}
+		ByteBuffer move = ByteBuffer.allocate(7 + w.word.length());
+		move.put((byte) w.row);
+		move.put((byte) w.col);
+		move.put((byte) (w.dir.equals("row") ? 1 : 0));
+		move.putShort((short) w.score);
+		move.putShort((short) blanks);
+		for (int i = 0; i < w.word.length(); i++) {
+			move.put((byte) w.word.charAt(i));
+		}
+		append(MOVE, move.array());
+
+		// count the moves since the last checkpoint
+		int moves = 0;
+		for (int i = records.size() - 1; !isBoard(records.get(i)); i--) {
+			if (records.get(i)[0] == MOVE) moves++;
+		}
+		if (moves >= CHECKPOINT_EVERY) {
+			checkpoint(b);
+		}
+	}
+
+	// 'b' has changed all over, in a way that isn't a turn of its own (see Board.undo)
+	public void checkpoint(Board b) {
+		append(CHECKPOINT, bytes(b));
+	}
+
+	// 'b' was just loaded over what was there (see Board.load)
+	public void loaded(Board b) {
+		if (version != VERSION) {
+			try {
+				channel.write(ByteBuffer.wrap(new byte[] { (byte) VERSION }), 4);
+			} catch (IOException ex) {
+				throw new UncheckedIOException("couldn't write to the journal", ex);
+			}
+			version = VERSION;
+		}
+		append(LOAD, bytes(b));
+	}
+
+	// the tile at row,col (0-based) was just turned into a blank or back
+	public void blank(int row, int col) {
+		append(BLANK, new byte[] { (byte) row, (byte) col });
+	}
+
+	// takes back the last 'turns' turns (or all of them, if there are fewer), and
+	// everything after them. returns the board as it was before them, or null if there
+	// was no turn to take back
+	public Board undo(int turns) {
+		int keep = records.size();
+		for (int i = records.size() - 1; i > 0 && turns > 0; i--) {
+			if (isTurn(records.get(i))) {
+				keep = i;
+				turns--;
+			}
+		}
+		if (keep == records.size()) return null;
+		append(UNDO, ByteBuffer.allocate(4).putInt(keep).array());
+		return board();
+	}
+
+	// adds 'record' to the history in memory
+	private void apply(byte[] record) {
+		if (record[0] == UNDO) {
+			int keep = ByteBuffer.wrap(record, 1, 4).getInt();
+			if (keep > 0 && keep < records.size()) {
+				records.subList(keep, records.size()).clear();
+			}
+		}
+		else {
+			records.add(record);
+		}
+	}
+
+	// writes one record to the end of the file, and waits for it to be on disk. if
+	// that fails, cuts off whatever part of it was written, and throws
+	private void append(byte type, byte[] payload) {
+		ByteBuffer out = ByteBuffer.allocate(OVERHEAD + payload.length);
+		out.put(type);
+		out.putShort((short) payload.length);
+		out.put(payload);
+		CRC32 crc = new CRC32();
+		crc.update(out.array(), 0, out.position());
+		out.putInt((int) crc.getValue());
+		out.flip();
+		long end = -1;
+		try {
+			end = channel.position();
+			write(channel, out);
+			channel.force(false);
+		} catch (IOException ex) {
+			if (end >= 0) {
+				try {
+					channel.truncate(end);
+					channel.position(end);
+				} catch (IOException again) {
+					// the next open cuts it off, as long as nothing comes after it
+				}
+			}
+			throw new UncheckedIOException("couldn't write to the journal", ex);
+		}
+
+		byte[] record = new byte[payload.length + 1];
+		record[0] = type;
+		System.arraycopy(payload, 0, record, 1, payload.length);
+		apply(record);
+	}
+
+	private static void write(FileChannel channel, ByteBuffer out) throws IOException {
+		while (out.hasRemaining()) {
+			channel.write(out);
+		}
+	}
+
+	// the board after the first 'end' records of the history: the last checkpoint
+	// before that, and what came after it
+	private Board replay(int end) {
+		int start = end - 1;
+		while (!isBoard(records.get(start))) start--;
+
+		Board b;
+		try {
+			b = Board.read(ByteBuffer.wrap(records.get(start), 1, records.get(start).length - 1));
+		} catch (IOException ex) {
+			// it passed its crc, so it's what was written
+			throw new IllegalStateException("bad checkpoint in the journal", ex);
+		}
+		for (int i = start + 1; i < end; i++) {
+			byte[] record = records.get(i);
+			if (record[0] == MOVE) {
+				b.commit(word(record));
+			}
+			else if (record[0] == BLANK) {
+				b.toggleBlank(record[1] + 1, record[2] + 1);
+			}
+		}
+		return b;
+	}
+
+	private static boolean isTurn(byte[] record) {
+		return record[0] == MOVE || record[0] == LOAD;
+	}
+
+	// does 'record' have the whole board?
+	private static boolean isBoard(byte[] record) {
+		return record[0] == CHECKPOINT || record[0] == LOAD;
+	}
+
+	private static byte[] bytes(Board b) {
+		ByteBuffer board = ByteBuffer.allocate(b.byteSize());
+		b.write(board);
+		return board.array();
+	}
+
+	// the move in a MOVE record
+	private static Word word(byte[] record) {
+		ByteBuffer in = ByteBuffer.wrap(record, 1, record.length - 1);
+		int row = in.get();
+		int col = in.get();
+		String dir = in.get() == 1 ? "row" : "col";
+		int score = in.getShort();
+		int blanks = in.getShort() & 0xFFFF;
+		char[] letters = new char[in.remaining()];
+		for (int i = 0; i < letters.length; i++) {
+			letters[i] = (char) in.get();
+		}
+
+		Word w = new Word(new String(letters));
+		for (int i = 0; i < letters.length; i++) {
+			if ((blanks & (1 << i)) != 0) w.blankLetters().add(i);
+		}
+		w.setLocation(row, col, dir);
+		w.score = score;
+		return w;
+	}
+}
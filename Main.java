@@ -1,16 +1,20 @@
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.FileReader;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 
 public class Main {
@@ -25,54 +29,126 @@ public class Main {
 
 		//test();
 		
+		if (args.length >= 1 && args[0].equals("compile-dictionary")) {
+			// there's no board, just where to write the compiled dictionary
+			compileDictionary(args.length > 1 ? args[1] : Dictionary.COMPILED);
+			return;
+		}
+		
+		if (args.length >= 2 && args[0].equals("serve")) {
+			// keep the dictionary and boards loaded, take commands over a socket
+			Server server = new Server(Dictionary.load());
+			if (args.length > 2) {
+				long megabytes = args.length > 3 ? Long.parseLong(args[3]) : ResultCache.BYTES >> 20;
+				server.sessions.cache = new ResultCache(Integer.parseInt(args[2]), megabytes << 20);
+			}
+			server.listen(args[1]);
+			return;
+		}
+		
+		// "--stats" anywhere prints what the searches did to System.err (see Stats)
+		ArrayList<String> list = new ArrayList<String>(Arrays.asList(args));
+		boolean stats = list.remove("--stats");
+		args = list.toArray(new String[list.size()]);
+		
+		if (args.length >= 1 && args[0].equals("batch")) {
+			// "find" on a stream of positions, see Batch.java
+			BufferedReader in = new BufferedReader(args.length > 1 && !args[1].equals("-") 
+					? new FileReader(args[1]) : new InputStreamReader(System.in));
+			Batch batch = new Batch(Dictionary.load());
+			if (stats) {
+				batch.stats = new Stats();
+			}
+			int failed = batch.run(in, System.out);
+			in.close();
+			if (stats) {
+				batch.stats.print(System.err);
+			}
+			if (failed > 0) {
+				System.err.printf("%d positions failed\n", failed);
+				System.exit(1);
+			}
+			return;
+		}
+		
+		if (args.length >= 2 && args[0].equals("selfplay")) {
+			// play games against ourselves, see SelfPlay.java
+			int games = Integer.parseInt(args[1]);
+			long seed = args.length > 2 ? Long.parseLong(args[2]) : 1;
+			SelfPlay.Policy policy = SelfPlay.policy(args.length > 3 ? args[3] : "greedy");
+			if (policy == null) {
+				System.err.println("unknown policy: " + args[3]);
+				System.exit(1);
+			}
+			SelfPlay selfPlay = new SelfPlay(Dictionary.load(), policy);
+			if (args.length > 5) {
+				selfPlay.every = Integer.parseInt(args[5]);
+			}
+			if (selfPlay.every < 1) {
+				System.err.println("usage: selfplay <games> [seed] [greedy | top<n>] [snapshots file] [turns between snapshots, 1 or more]");
+				System.exit(1);
+			}
+			if (args.length > 4) {
+				selfPlay.snapshots = new PrintStream(new FileOutputStream(args[4]));
+			}
+			
+			long start = System.nanoTime();
+			selfPlay.run(games, seed, System.out);
+			if (selfPlay.snapshots != null) {
+				selfPlay.snapshots.close();
+			}
+			double seconds = (System.nanoTime() - start) / 1e9;
+			System.err.printf("%d games, %d moves in %.1f s: %.2f games/s, %.1f moves/s\n", selfPlay.games,
+					selfPlay.moves, seconds, selfPlay.games / seconds, selfPlay.moves / seconds);
+			return;
+		}
+		
 		if (args.length < 2) {
-			System.err.println("usage: <board file> <command> [args]");
-			System.err.println("valid commands: print play find load blank words undo distribution");
+			System.err.println("usage: <board file> <command> [args] [--stats]");
+			System.err.println("       compile-dictionary [output file]");
+			System.err.println("       serve <port | unix socket path> [cached answers] [cache MB]");
+			System.err.println("       batch [positions file, or stdin] [--stats]");
+			System.err.println("       selfplay <games> [seed] [greedy | top<n>] [snapshots file] [turns between snapshots]");
+			System.err.println("valid commands: print play find sim endgame load blank words undo history distribution cache");
 			System.exit(1);
 		}
 
 		String boardFile = args[0];
-		String command = args[1];
 
-		// read in dictionary of words. dictionary keys are the sorted letters
-		// of the word,
-		// dictionary value is an ArrayList of all the words that sort into the
-		// key
-		HashMap<String, ArrayList<String>> words = new HashMap<String, ArrayList<String>>();
-		BufferedReader input = null;
-		@SuppressWarnings("unused")
-		int wordCount = 0;
-		try {
-			InputStream in = Main.class.getResourceAsStream("dictionary.txt");
-			input = new BufferedReader(new InputStreamReader(in));
-			String word;
-			while ((word = input.readLine()) != null) {
-				// sort the letters in the word
-				char[] chars = word.toCharArray();
-				java.util.Arrays.sort(chars);
-				String key = new String(chars);
-
-				if (words.containsKey(key)) {
-					ArrayList<String> list = (ArrayList<String>) words.get(key);
-					list.add(word);
-				} else {
-					ArrayList<String> list = new ArrayList<String>();
-					list.add(word);
-					words.put(key, list);
-				}
+		// the dictionary of words, memory mapped from the compiled copy if there is one
+		Dictionary words = Dictionary.load();
 
-				wordCount++;
-			}
-		} finally {
-			if (input != null) {
-				input.close();
-			}
+		Board b = loadBoard(boardFile);
+		if (b == null) {
+			System.exit(1);
+		}
+		b.dictionary = words;
+		if (stats) {
+			b.stats = new Stats();
 		}
 
-		//System.out.println("loaded " + wordCount + " words into " + words.size() + " keys");
+		boolean ok = run(b, args);
+		if (stats) {
+			b.stats.print(System.err);
+		}
+		if (!ok) {
+			System.exit(1);
+		}
 
-		Board b = loadBoard(boardFile);
-		b.dictionary = words;
+		if (b.modified) {
+			try {
+				storeBoard(b, boardFile);
+			} catch (UncheckedIOException ex) {
+				System.err.println("couldn't save " + boardFile + ": " + ex.getCause().getMessage());
+				System.exit(1);
+			}
+		}
+	}
+
+	// runs the command in args[1] (args[0] is the board file) against 'b', printing to
+	// System.out. returns false if the command failed and the board shouldn't be saved
+	static boolean run(Board b, String[] args) {
+		String command = args[1];
 
 		if (command.equals("print")) {
 			if (args.length < 2) {
@@ -96,16 +172,94 @@ public class Main {
 				}
 				else {
 					System.err.println("That was not a valid play");
-					System.exit(1);
+					return false;
 				}
 			}
 		} else if (command.equals("find")) {
-			if (args.length < 3) {
-				System.err.println("usage: find <letters> <limit>");
+			// "--deadline <ms>" stops the search after that long (see Board.best)
+			long millis = 0;
+			int deadline = Arrays.asList(args).indexOf("--deadline");
+			boolean missing = deadline == args.length - 1;
+			if (deadline > 0 && !missing) {
+				millis = Long.parseLong(args[deadline + 1]);
+				ArrayList<String> rest = new ArrayList<String>(Arrays.asList(args));
+				rest.subList(deadline, deadline + 2).clear();
+				args = rest.toArray(new String[rest.size()]);
+			}
+			if (args.length < 3 || missing) {
+				System.err.println("usage: find <letters> <limit> [--deadline <milliseconds>]");
 			} else {
 				b.print("letters");
 				int limit = args.length == 4 ? Integer.parseInt(args[3]) : 0;
-				b.findBest(args[2], limit);
+				b.findBest(args[2], limit, millis, System.out);
+			}
+		} else if (command.equals("sim")) {
+			if (args.length < 3) {
+				System.err.println("usage: sim <letters> [candidates] [iterations] [milliseconds] [plies]");
+			} else {
+				Rack rack = Rack.parse(args[2].toLowerCase());
+				if (rack == null) {
+					System.err.println("invalid character in tile set: " + args[2]);
+					return true;
+				}
+				int candidates = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+				int iterations = args.length > 4 ? Integer.parseInt(args[4]) : 1000;
+				long millis = args.length > 5 ? Long.parseLong(args[5]) : 0;
+				
+				b.print("letters");
+				Simulator sim = new Simulator(b, rack);
+				if (args.length > 6) sim.plies = Integer.parseInt(args[6]);
+				long start = System.nanoTime();
+				ArrayList<Simulator.Candidate> ranked = sim.run(candidates, iterations, millis);
+				System.out.println(" equity stddev  iters   move ('-' fell behind and was dropped)");
+				for (Simulator.Candidate c : ranked) {
+					System.out.println(c);
+				}
+				if (ranked.isEmpty()) {
+					System.out.println("no moves to simulate");
+				}
+				else if (ranked.size() == 1) {
+					System.out.println("(only one candidate, so there was nothing to rank it against)");
+				}
+				System.out.printf("%d ms\n", (System.nanoTime() - start) / 1000000);
+			}
+		} else if (command.equals("endgame")) {
+			if (args.length < 3) {
+				System.err.println("usage: endgame <letters> [milliseconds] [max depth]");
+			} else {
+				Rack rack = Rack.parse(args[2].toLowerCase());
+				if (rack == null) {
+					System.err.println("invalid character in tile set: " + args[2]);
+					return true;
+				}
+				long millis = args.length > 3 ? Long.parseLong(args[3]) : 10000;
+				int depth = args.length > 4 ? Integer.parseInt(args[4]) : 64;
+				
+				b.print("letters");
+				Endgame endgame = Endgame.create(b, rack);
+				if (endgame == null) {
+					return true;
+				}
+				long start = System.nanoTime();
+				endgame.solve(depth, millis);
+				
+				// play the line out on a copy, to show the moves
+				Board line = b.copy();
+				for (int i = 0; i < endgame.line.size(); i++) {
+					long move = endgame.line.get(i);
+					String who = i % 2 == 0 ? "us:  " : "them:";
+					if (move == Endgame.PASS) {
+						System.out.println(who + " pass");
+					}
+					else {
+						Word w = line.word(move);
+						line.play(w);
+						System.out.println(who + " " + w);
+					}
+				}
+				System.out.printf("spread %+d, %s %d plies, %d positions in %d ms\n", endgame.spread,
+						endgame.exact ? "solved in" : "searched", endgame.depth, endgame.nodes,
+						(System.nanoTime() - start) / 1000000);
 			}
 		} else if (command.equals("load")) {
 			if (args.length < 3) {
@@ -115,7 +269,7 @@ public class Main {
 					//System.out.println("board loaded successfully");
 				}
 				else {
-					System.exit(1);
+					return false;
 				}
 			}
 		} else if (command.equals("blank")) {
@@ -131,10 +285,13 @@ public class Main {
 				System.err.println("usage: words <letters>");
 			}
 			else {
-				ArrayList<Character> letters = new ArrayList<Character>();
-				for (char c : args[2].toCharArray()) letters.add(c);
+				Rack letters = Rack.parse(args[2].toLowerCase());
+				if (letters == null) {
+					System.err.println("invalid character in tile set: " + args[2]);
+					return true;
+				}
 					
-				ArrayList<Word> list = b.allKnownWords(letters, null);
+				ArrayList<Word> list = b.allKnownWords(letters);
 				Collections.sort(list);
 				for (Word w : list) {
 					System.out.println(w);
@@ -142,61 +299,149 @@ public class Main {
 			}
 		}
 		else if (command.equals("undo")) {
-			int count = b.undo();
-			if (count > 0) {
-				System.out.printf("Undid %d tiles\n", count);
-				b.print("letters");
+			int turns = args.length >= 3 ? Integer.parseInt(args[2]) : 1;
+			if (turns < 1) {
+				System.err.println("usage: undo [turns, 1 or more]");
 			}
 			else {
-				System.out.println("Nothing to undo");
+				int count = b.undo(turns);
+				if (count > 0) {
+					System.out.printf("Undid %d tiles\n", count);
+					b.print("letters");
+				}
+				else {
+					System.out.println("Nothing to undo");
+				}
+			}
+		}
+		else if (command.equals("history")) {
+			if (GameStore.gameId(args[0]) >= 0) {
+				// see GameStore
+				System.out.println("no history: games in a store are saved as their board only, without a journal");
+			}
+			else if (b.journal == null) {
+				System.out.println("no history yet (it's kept from the next change on)");
+			}
+			else {
+				ArrayList<String> turns = b.journal.history();
+				for (int i = 0; i < turns.size(); i++) {
+					System.out.printf("%3d %s\n", i + 1, turns.get(i));
+				}
 			}
 		}
 		else if (command.equals("distribution")) {
 			String leftovers = args.length >= 3 ? args[2] : "";
 			b.letterDistribution(leftovers);
 		}
+		else if (command.equals("cache")) {
+			// only the server keeps answers between commands
+			if (b.cache != null) {
+				b.cache.print(System.out);
+			}
+			else {
+				System.out.println("no cache (see serve)");
+			}
+		}
 		else {
 			System.err.println("unknown command: " + command);
 		}
 
-		storeBoard(b, boardFile);
+		return true;
+	}
+
+	// compiles dictionary.txt into the binary form that Dictionary.load() maps
+	private static void compileDictionary(String fileName) throws IOException {
+		long start = System.nanoTime();
+		Dictionary d = Dictionary.compile(Dictionary.readWords());
+		d.save(fileName);
+		System.out.printf("compiled %d words (%d keys, %d graph nodes) into %s in %d ms\n",
+				d.size(), d.keys(), d.graph.size(), fileName, (System.nanoTime() - start) / 1000000);
 	}
 
-	private static void storeBoard(Board b, String name) {
-		FileOutputStream fos = null;
-		ObjectOutputStream out = null;
+	// saves 'b' to the file 'name': starts a journal for it there (see Journal), unless
+	// it has one already, which has every change in it as soon as it's made. or, if
+	// 'name' is a game in a store, writes it there (see GameStore)
+	// throws UncheckedIOException if it can't, so the command fails (see Journal)
+	static void storeBoard(Board b, String name) {
+		if (b.journal != null) {
+			b.modified = false;
+			return;
+		}
 		try {
-			fos = new FileOutputStream(name);
-			out = new ObjectOutputStream(fos);
-			out.writeObject(b);
-			out.close();
+			int game = GameStore.gameId(name);
+			if (game >= 0) {
+				GameStore.open(GameStore.storeFile(name)).put(game, b);
+				b.modified = false;
+				return;
+			}
+
+			b.journal = Journal.create(name, b);
+			b.modified = false;
 
 			//System.out.println("stored board in file '" + name + "'");
 		} catch (IOException ex) {
-			ex.printStackTrace();
+			throw new UncheckedIOException(ex);
 		}
 	}
 
-	private static Board loadBoard(String name) {
+	// reads the game in the file 'name', or starts a new one if there is no such file.
+	// boards saved on their own (Board.write) or with Java serialization by older
+	// versions are read too. "<store file>#<game id>" is a game in a GameStore, which is
+	// only started if it has never been saved. returns null (having said why) if the
+	// game can't be read or started
+	static Board loadBoard(String name) {
 		Board b = null;
 
+		try {
+			int game = GameStore.gameId(name);
+			if (game >= 0) {
+				b = GameStore.open(GameStore.storeFile(name)).get(game);
+				if (b == null) {
+					b = new Board(Rules.WORDS_WITH_FRIENDS);
+					storeBoard(b, name);
+				}
+				return b;
+			}
+		} catch (IllegalArgumentException ex) {
+			System.err.println(ex.getMessage());
+			return null;
+		} catch (IOException ex) {
+			System.err.println(name + ": " + ex.getMessage());
+			return null;
+		} catch (UncheckedIOException ex) {
+			System.err.println(name + ": " + ex.getCause().getMessage());
+			return null;
+		}
+
 		boolean exists = (new File(name)).exists();
 		if (exists) {
-			FileInputStream fis = null;
-			ObjectInputStream in = null;
-
 			try {
-				fis = new FileInputStream(name);
-				in = new ObjectInputStream(fis);
-				b = (Board) in.readObject();
-				in.close();
+				ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(Paths.get(name)));
+				if (Journal.isJournal(in)) {
+					Journal journal = Journal.open(name);
+					b = journal.board();
+					b.journal = journal;
+				}
+				else if (Board.isSaved(in)) {
+					b = Board.read(in);
+				}
+				else {
+					ObjectInputStream old = new ObjectInputStream(new ByteArrayInputStream(in.array()));
+					b = (Board) old.readObject();
+					old.close();
+				}
 				//System.out.println("loaded board '" + name + "'");
 			} catch (Exception ex) {
 				ex.printStackTrace();
 			}
 		} else {
-			b = new Board(15);
-			storeBoard(b, name);
+			b = new Board(Rules.WORDS_WITH_FRIENDS);
+			try {
+				storeBoard(b, name);
+			} catch (UncheckedIOException ex) {
+				System.err.println(name + ": " + ex.getCause().getMessage());
+				return null;
+			}
 		}
 
 		return b;
@@ -0,0 +1,268 @@
+// Generates every legal placement of a rack along one row or column of the board.
+//
+// This is the anchor based search from Appel & Jacobson's "The World's Fastest
+// Scrabble Program":
+// - an "anchor" is an empty square next to a tile that is already on the board (or the
+//   center square on the first turn), every move has to cover at least one of them
+// - for each anchor we build a "left part" out of rack letters (or take the tiles that
+//   are already on the board to the left of it), then extend to the right through the
+//   anchor, one square at a time
+// - both halves walk the word graph (see Dawg.java) letter by letter, so we only ever
+//   try prefixes of real words, and the per square "cross checks" (the letters that
+//   make a valid perpendicular word) prune letters before they are placed
+//
+// Each move is found exactly once: left parts never extend over another anchor, so a
+// move is only built from its leftmost anchor.
+//
+// Moves come out packed into longs (see MoveList) and already scored, everything the
+// score needs about the line is handed over in scoring().
+public class MoveGenerator {
+
+	private Dawg graph;
+
+	// the letters in this row/column, Tile.Empty for open squares
+	private char[] line;
+
+	// letters allowed on each square by the perpendicular words (see Board.crossCheck)
+	private int[] cross;
+
+	// squares that a move has to touch
+	private boolean[] anchors;
+
+	// 0-based index of this row/column, and "row" or "col"
+	private int index;
+	private String dir;
+
+	// the letters we have left to play
+	private Rack rack;
+
+	// for scoring: the values of the letters, the value of the tile on each square
+	// (0 for blanks), the bonuses of each square, and the value of the letters in the
+	// word across each square (-1 if there is none, see Board.crossScore)
+	private int[] letterValues;
+	private int[] played;
+	private int[] letterBonus;
+	private int[] wordBonus;
+	private int[] crossScores;
+	private int bingoCount;
+	private int bingoBonus;
+
+	// the word being built, which of its letters are blank tiles, and the rank of each
+	// letter's edge (see Dawg.rank), which add up to the word's id
+	private int[] word;
+	private boolean[] blank;
+	private int[] ranks;
+	private int length;
+
+	private MoveList moves;
+
+	// what the search did, for Stats: graph edges followed, letters the cross checks 
+	// ruled out, and placements that spell a word (before the ones scoring 0 are dropped)
+	public long followed;
+	public long crossRejects;
+	public long candidates;
+
+	// the search stops where it is once System.nanoTime() passes 'deadline' (it looks
+	// every thousand edges or so), and sets 'stopped'. the moves found until then are
+	// still good moves, there just may be better ones
+	public long deadline = Long.MAX_VALUE;
+	public boolean stopped;
+
+	public MoveGenerator(Dawg graph, char[] line, int[] cross, boolean[] anchors, String dir, int index) {
+		this.graph = graph;
+		this.line = line;
+		this.cross = cross;
+		this.anchors = anchors;
+		this.dir = dir;
+		this.index = index;
+		word = new int[line.length];
+		blank = new boolean[line.length];
+		ranks = new int[line.length];
+	}
+
+	public void scoring(int[] letterValues, int[] played, int[] letterBonus, int[] wordBonus, 
+			int[] crossScores, int bingoCount, int bingoBonus) {
+		this.letterValues = letterValues;
+		this.played = played;
+		this.letterBonus = letterBonus;
+		this.wordBonus = wordBonus;
+		this.crossScores = crossScores;
+		this.bingoCount = bingoCount;
+		this.bingoBonus = bingoBonus;
+	}
+
+	// returns every legal placement in this file for the given rack that scores more
+	// than 0. the rack is used as scratch space, but is back the way it was when this 
+	// returns
+	public MoveList generate(Rack rack) {
+		MoveList moves = new MoveList();
+		for (int anchor = 0; anchor < line.length; anchor++) {
+			if (anchors[anchor]) generate(rack, anchor, moves);
+		}
+		return moves;
+	}
+
+	// adds the placements that have 'anchor' as their leftmost anchor to 'moves', same
+	// as generate(rack) but for one anchor, so callers can skip the ones they don't need
+	public void generate(Rack rack, int anchor, MoveList moves) {
+		this.rack = rack;
+		this.moves = moves;
+		length = 0;
+
+		if (anchor > 0 && line[anchor - 1] != Tile.Empty) {
+			// the left part is whatever is already on the board
+			int start = anchor - 1;
+			while (start > 0 && line[start - 1] != Tile.Empty) start--;
+
+			int node = Dawg.ROOT;
+			for (int i = start; i < anchor && node != Dawg.NONE; i++) {
+				int next = graph.child(node, line[i] - 'a');
+				if (next != Dawg.NONE) push(line[i] - 'a', false, node);
+				node = next;
+			}
+			if (node != Dawg.NONE) {
+				extendRight(node, anchor, anchor);
+			}
+		}
+		else {
+			// the left part can use any open squares up to the previous anchor
+			int limit = 0;
+			int i = anchor - 1;
+			while (i >= 0 && !anchors[i] && line[i] == Tile.Empty) {
+				limit++;
+				i--;
+			}
+			if (i >= 0 && line[i] != Tile.Empty && limit > 0) {
+				// don't butt up against a tile we can't see from here
+				limit--;
+			}
+			leftPart(Dawg.ROOT, limit, anchor);
+		}
+	}
+
+	// try every left part of up to 'limit' rack letters, then extend each one to the right
+	private void leftPart(int node, int limit, int anchor) {
+		if (stopped) return;
+		extendRight(node, anchor, anchor);
+
+		if (limit == 0) return;
+
+		int edges = graph.edges(node);
+		for (int l = 0; l < 26; l++) {
+			if ((edges & (1 << l)) == 0) continue;
+			int next = graph.child(node, l);
+
+			if (rack.has(l)) {
+				rack.take(l);
+				push(l, false, node);
+				leftPart(next, limit - 1, anchor);
+				length--;
+				rack.put(l);
+			}
+			if (rack.has(Rack.BLANK)) {
+				rack.take(Rack.BLANK);
+				push(l, true, node);
+				leftPart(next, limit - 1, anchor);
+				length--;
+				rack.put(Rack.BLANK);
+			}
+		}
+	}
+
+	// 'square' is the next square to fill, 'node' is where the word so far left us
+	private void extendRight(int node, int square, int anchor) {
+		if (stopped) return;
+		if (square >= line.length || line[square] == Tile.Empty) {
+			// the word stops here, if it covered the anchor and is a word then it's a move
+			if (square > anchor && length >= 2 && graph.terminal(node)) {
+				record(square - length);
+			}
+			if (square >= line.length) return;
+
+			int edges = graph.edges(node) & cross[square];
+			crossRejects += Integer.bitCount(graph.edges(node) & ~cross[square]);
+			for (int l = 0; l < 26; l++) {
+				if ((edges & (1 << l)) == 0) continue;
+				int next = graph.child(node, l);
+
+				if (rack.has(l)) {
+					rack.take(l);
+					push(l, false, node);
+					extendRight(next, square + 1, anchor);
+					length--;
+					rack.put(l);
+				}
+				if (rack.has(Rack.BLANK)) {
+					rack.take(Rack.BLANK);
+					push(l, true, node);
+					extendRight(next, square + 1, anchor);
+					length--;
+					rack.put(Rack.BLANK);
+				}
+			}
+		}
+		else {
+			// the square already has a tile, we have to use it
+			int l = line[square] - 'a';
+			int next = graph.child(node, l);
+			if (next != Dawg.NONE) {
+				push(l, false, node);
+				extendRight(next, square + 1, anchor);
+				length--;
+			}
+		}
+	}
+
+	// 'node' is where the word was before this letter
+	private void push(int letter, boolean isBlank, int node) {
+		word[length] = letter;
+		blank[length] = isBlank;
+		ranks[length] = graph.rank(node, letter);
+		length++;
+		followed++;
+		if ((followed & 1023) == 0 && System.nanoTime() > deadline) stopped = true;
+	}
+
+	// 'start' is the square of the first letter of the word. this is Board.score for
+	// the one line: the word itself, and the words across through the new letters
+	private void record(int start) {
+		candidates++;
+		int id = 0;
+		int blanks = 0;
+		int main = 0;
+		int multiplier = 1;
+		int across = 0;
+		int placed = 0;
+		for (int i = 0; i < length; i++) {
+			int square = start + i;
+			id += ranks[i];
+			if (line[square] != Tile.Empty) {
+				main += played[square];
+				continue;
+			}
+			
+			placed++;
+			if (blank[i]) {
+				blanks |= 1 << i;
+				if (crossScores[square] >= 0) across += crossScores[square];
+			}
+			else {
+				int value = letterValues[word[i]] * letterBonus[square];
+				main += value;
+				multiplier *= wordBonus[square];
+				if (crossScores[square] >= 0) across += (crossScores[square] + value) * wordBonus[square];
+			}
+		}
+		
+		int score = main * multiplier + across;
+		if (placed == bingoCount) score += bingoBonus;
+		if (score <= 0) return;
+		
+		if (dir.equals("row")) {
+			moves.add(MoveList.pack(score, dir, index, start, id, blanks));
+		}
+		else {
+			moves.add(MoveList.pack(score, dir, start, index, id, blanks));
+		}
+	}
+}
@@ -0,0 +1,92 @@
+import java.util.Arrays;
+
+// A growable list of moves, each one packed into a long so that a search can find
+// thousands of them without building a Word (and its strings) for each.
+//
+// From the high bits down:
+//   12 bits  4095 - score
+//    1 bit   direction, 0 for "col" and 1 for "row"
+//    4 bits  row (0-based)
+//    4 bits  col (0-based)
+//   22 bits  word id (see Dawg.id)
+//   15 bits  blank mask, bit i set if letter i of the word is a blank tile
+//
+// so sorting the longs puts the highest scores first, and moves with the same score
+// in a fixed order by where they are played. see Board.word for turning one back
+// into a Word.
+public class MoveList {
+
+	public static final int MAX_SCORE = (1 << 12) - 1;
+
+	// passing instead of playing, for code that plays moves out (see SelfPlay). moves 
+	// score more than 0, so a real move always has some of its score bits set
+	public static final long PASS = 0;
+
+	private long[] moves;
+	private int size;
+
+	// false if the search that made the list ran out of time before it was done (see
+	// Board.best), so there may be better moves than these
+	public boolean exhaustive = true;
+
+	public MoveList() {
+		moves = new long[64];
+	}
+
+	public static long pack(int score, String dir, int row, int col, int id, int blanks) {
+		return (long) (MAX_SCORE - Math.min(score, MAX_SCORE)) << 52
+				| (dir.equals("row") ? 1L : 0L) << 51
+				| (long) row << 47
+				| (long) col << 43
+				| (long) id << 15
+				| blanks;
+	}
+
+	public static int score(long move) {
+		return MAX_SCORE - (int) (move >>> 52);
+	}
+
+	public static String dir(long move) {
+		return ((move >>> 51) & 1) == 1 ? "row" : "col";
+	}
+
+	public static int row(long move) {
+		return (int) (move >>> 47) & 15;
+	}
+
+	public static int col(long move) {
+		return (int) (move >>> 43) & 15;
+	}
+
+	public static int id(long move) {
+		return (int) (move >>> 15) & ((1 << 22) - 1);
+	}
+
+	public static int blanks(long move) {
+		return (int) move & ((1 << 15) - 1);
+	}
+
+	public void add(long move) {
+		if (size == moves.length) {
+			moves = Arrays.copyOf(moves, size * 2);
+		}
+		moves[size++] = move;
+	}
+
+	public long get(int i) {
+		return moves[i];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public void clear() {
+		size = 0;
+	}
+
+	// best first (see above)
+	public void sort() {
+		Arrays.sort(moves, 0, size);
+	}
+}
@@ -0,0 +1,142 @@
+// The letters in a player's hand, as a count per letter: index 0 to 25 for 'a' to 'z',
+// and index 26 (BLANK) for blank tiles.
+//
+// Searches take and put back letters millions of times, so this is just an int[27]
+// with no boxing and no allocation after it's built.
+public class Rack {
+
+	public static final int BLANK = 26;
+
+	private int[] counts;
+
+	// total number of tiles
+	private int size;
+
+	public Rack() {
+		counts = new int[27];
+	}
+
+	// a rack with the letters in 'letters', or null if one of them isn't a tile (see add)
+	public static Rack parse(String letters) {
+		Rack r = new Rack();
+		for (int i = 0; i < letters.length(); i++) {
+			if (!r.add(letters.charAt(i))) return null;
+		}
+		return r;
+	}
+
+	// adds a tile: 'a' to 'z', or Tile.Blank. returns false for anything else
+	public boolean add(char c) {
+		if (c >= 'a' && c <= 'z') {
+			put(c - 'a');
+		}
+		else if (c == Tile.Blank) {
+			put(BLANK);
+		}
+		else {
+			return false;
+		}
+		return true;
+	}
+
+	// number of tiles for 'letter' (0-25, or BLANK)
+	public int count(int letter) {
+		return counts[letter];
+	}
+
+	public boolean has(int letter) {
+		return counts[letter] > 0;
+	}
+
+	// remove one 'letter' from the rack, the caller has checked has(letter)
+	public void take(int letter) {
+		counts[letter]--;
+		size--;
+	}
+
+	// put one 'letter' (back) on the rack
+	public void put(int letter) {
+		counts[letter]++;
+		size++;
+	}
+
+	public int blanks() {
+		return counts[BLANK];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	// does this rack have every letter of 'other' (not counting blanks as wildcards)?
+	public boolean contains(Rack other) {
+		for (int i = 0; i < counts.length; i++) {
+			if (other.counts[i] > counts[i]) return false;
+		}
+		return true;
+	}
+
+	// takes the letters of 'other' off the rack, the caller has checked contains(other)
+	public void remove(Rack other) {
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] -= other.counts[i];
+		}
+		size -= other.size;
+	}
+
+	// what the tiles are worth with 'letterValues' (see Rules), blanks are worth nothing
+	public int value(int[] letterValues) {
+		int value = 0;
+		for (int i = 0; i < 26; i++) {
+			value += counts[i] * letterValues[i];
+		}
+		return value;
+	}
+
+	// the tiles that are neither on 'board' nor on this rack: the other player's and
+	// the bag's. a board loaded from a snapshot might have tiles the bag doesn't,
+	// those just don't count
+	public Rack unseen(Board board) {
+		int[] bag = board.rules().tiles;
+		int[] played = board.tileCounts();
+		Rack unseen = new Rack();
+		for (int i = 0; i < counts.length; i++) {
+			for (int left = bag[i] - played[i] - counts[i]; left > 0; left--) {
+				unseen.put(i);
+			}
+		}
+		return unseen;
+	}
+
+	// the letters we have at least one of, bit 0 for 'a' (blanks aren't included)
+	public int mask() {
+		int m = 0;
+		for (int i = 0; i < 26; i++) {
+			if (counts[i] > 0) m |= 1 << i;
+		}
+		return m;
+	}
+
+	// our counts of the 13 letters from 'first' (0 or 13), see Dictionary.pack
+	public long packed(int first) {
+		return Dictionary.pack(counts, first);
+	}
+
+	public Rack copy() {
+		Rack r = new Rack();
+		System.arraycopy(counts, 0, r.counts, 0, counts.length);
+		r.size = size;
+		return r;
+	}
+
+	// the letters in alphabetical order, blanks last
+	public String toString() {
+		StringBuilder b = new StringBuilder(size);
+		for (int i = 0; i < counts.length; i++) {
+			for (int j = 0; j < counts[i]; j++) {
+				b.append(i == BLANK ? Tile.Blank : (char) ('a' + i));
+			}
+		}
+		return b.toString();
+	}
+}
@@ -0,0 +1,93 @@
+import java.io.PrintStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Answers to questions that were asked before. The server gets the same "find" or
+// "words" over and over (retries, refreshes, hint buttons), and a search takes tens of
+// milliseconds where looking up the last answer takes microseconds.
+//
+// Keys say everything the answer depends on (see Board.findBest and allKnownWords):
+// the kind of question, a hash of the board (Board.hash), the rack in sorted order and
+// the limit. A board that changes gets a different hash, so nothing ever has to be
+// thrown away when one does, the old answers just stop being asked for.
+//
+// The least recently used answers are dropped once there are more than 'maxEntries'
+// of them, or they take more than 'maxBytes' (as estimated by whoever put them in).
+// One cache is shared by all of the server's boards and request threads, so every
+// method is synchronized.
+public class ResultCache {
+
+	// the defaults for the server
+	public static final int ENTRIES = 4096;
+	public static final long BYTES = 64L << 20;
+
+	// per entry, on top of what the value is estimated at: the key, the map entry
+	private static final int OVERHEAD = 128;
+
+	private static class Entry {
+		Object value;
+		long bytes;
+	}
+
+	private LinkedHashMap<String, Entry> entries;
+	private int maxEntries;
+	private long maxBytes;
+	private long bytes;
+
+	public long hits;
+	public long misses;
+	public long evictions;
+
+	public ResultCache(int maxEntries, long maxBytes) {
+		this.maxEntries = maxEntries;
+		this.maxBytes = maxBytes;
+		// in access order, so the first entry is the least recently used one
+		entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	}
+
+	// the value put in for 'key', or null if there's none (any more)
+	public synchronized Object get(String key) {
+		Entry e = entries.get(key);
+		if (e == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		return e.value;
+	}
+
+	// keeps 'value', which takes about 'size' bytes, and drops the least recently
+	// used values until everything fits again. values that could never fit aren't kept
+	public synchronized void put(String key, Object value, long size) {
+		Entry e = new Entry();
+		e.value = value;
+		e.bytes = size + key.length() * 2 + OVERHEAD;
+		if (e.bytes > maxBytes || maxEntries <= 0) return;
+
+		Entry old = entries.put(key, e);
+		if (old != null) bytes -= old.bytes;
+		bytes += e.bytes;
+
+		Iterator<Map.Entry<String, Entry>> oldest = entries.entrySet().iterator();
+		while (entries.size() > maxEntries || bytes > maxBytes) {
+			bytes -= oldest.next().getValue().bytes;
+			oldest.remove();
+			evictions++;
+		}
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+		bytes = 0;
+	}
+
+	// the "cache" command
+	public synchronized void print(PrintStream out) {
+		long asked = hits + misses;
+		out.printf("cache:      %d entries, %.1f of %.1f MB (at most %d entries)\n", entries.size(),
+				bytes / 1048576.0, maxBytes / 1048576.0, maxEntries);
+		out.printf("lookups:    %d hits, %d misses (%.1f%% hits), %d evicted\n", hits, misses,
+				asked > 0 ? hits * 100.0 / asked : 0.0, evictions);
+	}
+}
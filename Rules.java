@@ -0,0 +1,95 @@
+import java.util.Arrays;
+
+// A rule set: the size of the board, where its bonus squares are, the letter values,
+// the tiles in the bag and the bingo bonus. None of it changes during a game, so
+// every board playing by the same rules shares one copy (see Board.rules).
+public class Rules {
+
+	public static final Rules WORDS_WITH_FRIENDS = wordsWithFriends();
+
+	// saved with each board, see byId
+	public final int id;
+
+	public final int size;
+
+	// point values of the letters
+	public final int[] letterValues;
+
+	// how many of each tile the game starts with, indexed like a Rack (Rack.BLANK for
+	// blanks), and how many tiles a player holds
+	public final int[] tiles;
+	public final int rackSize;
+
+	// bingo rules
+	public final int bingoCount;
+	public final int bingoBonus;
+
+	// multipliers per square, at row * size + col
+	public final byte[] letterBonus;
+	public final byte[] wordBonus;
+
+	private Rules(int id, int size, int[] letterValues, int[] tiles, int rackSize, int bingoCount, 
+			int bingoBonus) {
+		this.id = id;
+		this.size = size;
+		this.letterValues = letterValues;
+		this.tiles = tiles;
+		this.rackSize = rackSize;
+		this.bingoCount = bingoCount;
+		this.bingoBonus = bingoBonus;
+		letterBonus = new byte[size * size];
+		wordBonus = new byte[size * size];
+		Arrays.fill(letterBonus, (byte) 1);
+		Arrays.fill(wordBonus, (byte) 1);
+	}
+
+	// the rule set with the given id, or null if there isn't one
+	public static Rules byId(int id) {
+		return id == WORDS_WITH_FRIENDS.id ? WORDS_WITH_FRIENDS : null;
+	}
+
+	// WWF rules
+	private static Rules wordsWithFriends() {
+		Rules r = new Rules(1, 15,
+				new int[] { 1, 4, 4, 2, 1, 4, 3, 3, 1, 10, 5, 2, 4, 2, 1, 4, 10, 1, 1, 1, 2, 5, 4, 8, 3, 10 },
+				// the standard 104 tile bag. wwf_letters.txt, a tally from one finished
+				// game, has one 't' fewer and one blank more
+				new int[] { 9, 2, 2, 5, 13, 2, 3, 4, 8, 1, 1, 4, 2, 5, 8, 2, 1, 6, 5, 7, 4, 2, 2, 1, 2, 1, 2 },
+				7, 7, 35);
+
+		r.wordsWithFriendsQuadrant(1,1);
+		r.wordsWithFriendsQuadrant(-1,1);
+		r.wordsWithFriendsQuadrant(1,-1);
+		r.wordsWithFriendsQuadrant(-1,-1);
+		return r;
+	}
+
+	// helper function, assigns bonus values in a quadrant of the board
+	private void wordsWithFriendsQuadrant(int x, int y) {
+		wordBonus[cartesianIndex(4*x, 0)] = 2;
+		letterBonus[cartesianIndex(3*x, 1*y)] = 2;
+		letterBonus[cartesianIndex(7*x, 1*y)] = 3;
+		letterBonus[cartesianIndex(2*x, 2*y)] = 3;
+		wordBonus[cartesianIndex(6*x, 2*y)] = 2;
+		letterBonus[cartesianIndex(1*x, 3*y)] = 2;
+		letterBonus[cartesianIndex(5*x, 3*y)] = 2;
+		letterBonus[cartesianIndex(4*x, 4*y)] = 3;
+		wordBonus[cartesianIndex(7*x, 4*y)] = 3;
+		letterBonus[cartesianIndex(3*x, 5*y)] = 2;
+		letterBonus[cartesianIndex(6*x, 5*y)] = 2;
+		wordBonus[cartesianIndex(2*x, 6*y)] = 2;
+		letterBonus[cartesianIndex(5*x, 6*y)] = 2;
+		letterBonus[cartesianIndex(1*x, 7*y)] = 3;
+		wordBonus[cartesianIndex(4*x, 7*y)] = 3;
+		wordBonus[cartesianIndex(0, 4*y)] = 2;
+	}
+
+	// index of a square based on Cartesian geometry, with {0,0} in the center of the board
+	private int cartesianIndex(int x, int y) {
+		int center = size / 2;
+		int row = center + y;
+		int col = center + x;
+
+		return row * size + col;
+	}
+}
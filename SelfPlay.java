@@ -0,0 +1,188 @@
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+// Plays whole games against itself, to make positions for tuning and benchmarks.
+//
+// Each game starts from a new board and a full bag (Rules.tiles), shuffled with the
+// game's seed, so a game can be played again from its seed alone. Both players draw
+// up to Rules.rackSize tiles and take turns choosing a move with the Policy, until a
+// player plays out with the bag empty (and gets the value of the other's tiles, which
+// the other loses) or both pass in a row (each loses the value of their own tiles).
+//
+// Games are played in parallel on the common fork/join pool, and written in order as
+// they finish (like Batch). Each game is written as:
+//
+//   game <number> seed <seed>
+//   <turn> <player> <rack> <move, as find prints it, or "pass">
+//   ...
+//   end <player 0's score> <player 1's score>
+//
+// and, if there's somewhere to write them, every 'every' turns a snapshot of the
+// board with the rack of the player to move. snapshots are in Batch's input format
+// (the board as "print" shows it, which is what "load" reads), so they can go
+// straight to "batch".
+public class SelfPlay {
+
+	// chooses the move for 'rack' on 'board', a packed move from Board.best or
+	// MoveList.PASS. 'random' is the game's, so games with the same seed are the same
+	public interface Policy {
+		long choose(Board board, Rack rack, Random random);
+	}
+
+	// the highest scoring move
+	public static final Policy GREEDY = new Policy() {
+		public long choose(Board board, Rack rack, Random random) {
+			MoveList moves = board.best(rack, 1);
+			return moves.size() > 0 ? moves.get(0) : MoveList.PASS;
+		}
+	};
+
+	// "greedy", or "top<n>" for any one of the 'n' highest scoring moves, or null
+	public static Policy policy(String name) {
+		if (name.equals("greedy")) {
+			return GREEDY;
+		}
+		if (name.matches("top\\d+")) {
+			final int n = Integer.parseInt(name.substring(3));
+			return new Policy() {
+				public long choose(Board board, Rack rack, Random random) {
+					MoveList moves = board.best(rack, n);
+					return moves.size() > 0 ? moves.get(random.nextInt(moves.size())) : MoveList.PASS;
+				}
+			};
+		}
+		return null;
+	}
+
+	private Dictionary dictionary;
+	private Rules rules;
+	private Policy policy;
+
+	// where snapshots go (or nowhere), and how many turns apart
+	public PrintStream snapshots;
+	public int every = 5;
+
+	// totals of what has been played so far
+	public long games;
+	public long moves;
+
+	public SelfPlay(Dictionary dictionary, Policy policy) {
+		this.dictionary = dictionary;
+		this.policy = policy;
+		rules = Rules.WORDS_WITH_FRIENDS;
+	}
+
+	// plays 'count' games with seeds 'seed', 'seed' + 1, ... and writes them to 'out'
+	public void run(int count, final long seed, PrintStream out) {
+		ArrayDeque<ForkJoinTask<String[]>> pending = new ArrayDeque<ForkJoinTask<String[]>>();
+		int ahead = ForkJoinPool.commonPool().getParallelism() * 4;
+
+		for (int i = 0; i < count; i++) {
+			final int game = i;
+			pending.add(ForkJoinPool.commonPool().submit(new Callable<String[]>() {
+				public String[] call() {
+					return play(game, seed + game);
+				}
+			}));
+
+			while (!pending.isEmpty() && (pending.peek().isDone() || pending.size() >= ahead)) {
+				write(pending.poll().join(), out);
+			}
+		}
+		while (!pending.isEmpty()) {
+			write(pending.poll().join(), out);
+		}
+	}
+
+	private void write(String[] game, PrintStream out) {
+		out.print(game[0]);
+		out.flush();
+		if (snapshots != null) {
+			snapshots.print(game[1]);
+			snapshots.flush();
+		}
+		games++;
+		moves += Integer.parseInt(game[2]);
+	}
+
+	// plays one game, returns its record, its snapshots and how many moves it had
+	private String[] play(int game, long seed) {
+		Random random = new Random(seed);
+		StringBuilder record = new StringBuilder();
+		StringBuilder snapshot = new StringBuilder();
+		record.append(String.format("game %d seed %d\n", game, seed));
+
+		// the bag, shuffled, drawn from the end
+		int left = 0;
+		for (int count : rules.tiles) left += count;
+		char[] bag = new char[left];
+		left = 0;
+		for (int l = 0; l < rules.tiles.length; l++) {
+			for (int i = 0; i < rules.tiles[l]; i++) {
+				bag[left++] = l == Rack.BLANK ? Tile.Blank : (char) ('a' + l);
+			}
+		}
+		for (int i = left - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			char t = bag[i];
+			bag[i] = bag[j];
+			bag[j] = t;
+		}
+
+		Board b = new Board(rules);
+		b.dictionary = dictionary;
+		Rack[] racks = { new Rack(), new Rack() };
+		int[] scores = new int[2];
+		int side = 0;
+		int passes = 0;
+		int played = 0;
+		for (int turn = 1; ; turn++) {
+			for (Rack rack : racks) {
+				while (rack.size() < rules.rackSize && left > 0) rack.add(bag[--left]);
+			}
+			Rack rack = racks[side];
+
+			if (snapshots != null && turn % every == 0) {
+				snapshot.append(String.format("g%d.%d %s\n", game, turn, rack));
+				snapshot.append(b.toString());
+			}
+
+			long move = policy.choose(b, rack, random);
+			if (move == MoveList.PASS) {
+				record.append(String.format("%3d %d %-7s pass\n", turn, side, rack));
+				if (++passes == 2) {
+					// both passed, each loses what they're holding
+					scores[0] -= racks[0].value(rules.letterValues);
+					scores[1] -= racks[1].value(rules.letterValues);
+					break;
+				}
+			}
+			else {
+				Word w = b.word(move);
+				Rack used = b.tiles(w);
+				record.append(String.format("%3d %d %-7s %s\n", turn, side, rack, w));
+				b.play(w);
+				rack.remove(used);
+				scores[side] += w.score;
+				passes = 0;
+				played++;
+
+				if (rack.size() == 0 && left == 0) {
+					// played out
+					int rest = racks[1 - side].value(rules.letterValues);
+					scores[side] += rest;
+					scores[1 - side] -= rest;
+					break;
+				}
+			}
+			side = 1 - side;
+		}
+
+		record.append(String.format("end %d %d\n", scores[0], scores[1]));
+		return new String[] { record.toString(), snapshot.toString(), String.valueOf(played) };
+	}
+}
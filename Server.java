@@ -0,0 +1,167 @@
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Long running version of Main: the dictionary and the boards that have been used stay
+// in memory, and commands come in over a socket instead of the command line.
+//
+// The protocol is line based. Each request is one line with the same arguments the
+// command line takes:
+//
+//   <board file> <command> [args]
+//
+// The response is whatever the command would have printed (stdout and stderr),
+// followed by a status line with how long the request took:
+//
+//   ok 1234us
+//   error 1234us
+//
+// Games are still written to their files (their journals, see Journal) as every command
+// changes them, so the command line and the server can be used on the same games.
+//
+// Requests on different games run at the same time, and so do requests that only read
+// a game, like "find" and "print", on the same one (see Sessions).
+//
+// "find" and "words" answers are kept in one cache for all boards (see ResultCache),
+// so asking the same again is answered without searching. "cache" shows how it does.
+public class Server {
+
+	// the games that have been used
+	public Sessions sessions;
+
+	// where System.out and System.err go for the request running on this thread
+	private static final ThreadLocal<OutputStream> capture = new ThreadLocal<OutputStream>();
+
+	public Server(Dictionary dictionary) {
+		sessions = new Sessions(dictionary);
+	}
+
+	// 'address' is a TCP port on localhost, or the path of a Unix domain socket
+	public void listen(String address) throws IOException {
+		ServerSocketChannel server;
+		SocketAddress bound;
+		if (address.matches("\\d+")) {
+			server = ServerSocketChannel.open();
+			bound = new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(address));
+		}
+		else {
+			Path path = Paths.get(address);
+			Files.deleteIfExists(path);
+			server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+			bound = UnixDomainSocketAddress.of(path);
+		}
+		server.bind(bound);
+
+		redirectOutput();
+		System.err.println("listening on " + bound);
+
+		// one thread per connection
+		ExecutorService pool = Executors.newCachedThreadPool();
+		while (true) {
+			final SocketChannel client = server.accept();
+			pool.execute(new Runnable() {
+				public void run() {
+					serve(client);
+				}
+			});
+		}
+	}
+
+	// answers requests from one connection until it closes
+	private void serve(SocketChannel client) {
+		try {
+			BufferedReader in = new BufferedReader(new InputStreamReader(Channels.newInputStream(client)));
+			OutputStream out = Channels.newOutputStream(client);
+			String line;
+			while ((line = in.readLine()) != null) {
+				if (line.trim().length() == 0) continue;
+				out.write(execute(line).getBytes());
+				out.flush();
+			}
+		} catch (IOException ex) {
+			System.err.println("connection failed: " + ex.getMessage());
+		} finally {
+			try {
+				client.close();
+			} catch (IOException ex) {
+				// nothing left to do with it
+			}
+		}
+	}
+
+	// runs one request line, returns the response (output and status line)
+	public String execute(String line) {
+		long start = System.nanoTime();
+		// "--stats" anywhere adds what the searches did to the response (see Stats)
+		ArrayList<String> list = new ArrayList<String>(Arrays.asList(line.trim().split("\\s+")));
+		Stats stats = list.remove("--stats") ? new Stats() : null;
+		String[] args = list.toArray(new String[0]);
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		boolean ok = false;
+
+		capture.set(output);
+		try {
+			if (args.length < 2) {
+				System.out.println("usage: <board file> <command> [args] [--stats]");
+			}
+			else {
+				ok = sessions.run(args, stats);
+				if (stats != null) {
+					stats.print(System.err);
+				}
+			}
+		} catch (Exception ex) {
+			ex.printStackTrace();
+		} finally {
+			capture.remove();
+		}
+
+		long micros = (System.nanoTime() - start) / 1000;
+		System.err.printf("%s: %s %dus\n", line, ok ? "ok" : "error", micros);
+		return output.toString() + String.format("%s %dus\n", ok ? "ok" : "error", micros);
+	}
+
+	// sends System.out and System.err to the current request's buffer, if there is one,
+	// so the commands in Main and Board can keep printing like they always have
+	private static void redirectOutput() {
+		final PrintStream console = System.err;
+		OutputStream router = new OutputStream() {
+			public void write(int b) throws IOException {
+				target().write(b);
+			}
+
+			public void write(byte[] b, int off, int len) throws IOException {
+				target().write(b, off, len);
+			}
+
+			public void flush() throws IOException {
+				target().flush();
+			}
+
+			private OutputStream target() {
+				OutputStream out = capture.get();
+				return out != null ? out : console;
+			}
+		};
+		System.setOut(new PrintStream(router, true));
+		System.setErr(new PrintStream(router, true));
+	}
+}
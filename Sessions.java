@@ -0,0 +1,133 @@
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+// The games the server has open, by name (a board file or a game in a store, see
+// Main.loadBoard), and which commands on them can run at the same time:
+// - commands that change a game (play, load, blank, undo...) take that game's lock, so
+//   they run one at a time on each game, and don't wait for anything on other games
+// - commands that only read (READERS) don't take any lock. they run on a snapshot of
+//   the game as of its last change (see Board.snapshot), which any number of them can
+//   share. so a "find" doesn't hold up a "play" on the same game either, the play just
+//   means the next reader gets a new snapshot
+//
+// A game is loaded the first time it's used, under its own lock, so loading one game
+// doesn't hold up the others. If a command fails, its game is loaded again on next use,
+// in case the command left it half changed.
+public class Sessions {
+
+	// the commands that only read the board
+	public static final HashSet<String> READERS = new HashSet<String>(
+			Arrays.asList("print", "find", "words", "sim", "endgame", "distribution", "cache"));
+
+	private static class Game {
+		// null until it's used, and after a command failed on it
+		Board board;
+
+		// 'board' as of its last change, for READERS. null until one asks for it
+		volatile Board snapshot;
+	}
+
+	private Dictionary dictionary;
+
+	// locked by the game, not as a whole
+	private ConcurrentHashMap<String, Game> games = new ConcurrentHashMap<String, Game>();
+
+	// answers that were asked for before, on any game
+	public ResultCache cache = new ResultCache(ResultCache.ENTRIES, ResultCache.BYTES);
+
+	public Sessions(Dictionary dictionary) {
+		this.dictionary = dictionary;
+	}
+
+	// runs the command in args[1] on the game args[0] (see Main.run), and saves the game
+	// if it changed. what the searches did is added to 'stats', if it's set. returns
+	// false if the command failed
+	public boolean run(String[] args, Stats stats) {
+		Game game = game(args[0]);
+		if (READERS.contains(args[1])) {
+			Board b = snapshot(game, args[0]);
+			if (stats != null) {
+				// the snapshot is shared, so count on a copy of it
+				b = b.copy();
+				b.cache = cache;
+				b.stats = stats;
+			}
+			return Main.run(b, args);
+		}
+
+		synchronized (game) {
+			boolean ok = false;
+			Board b = null;
+			try {
+				b = board(game, args[0]);
+				b.stats = stats;
+				boolean ran = Main.run(b, args);
+				if (ran && b.modified) {
+					// throws if it can't, and then the command failed too
+					Main.storeBoard(b, args[0]);
+				}
+				ok = ran;
+			} finally {
+				if (b != null) b.stats = null;
+				if (!ok) forget(game);
+				game.snapshot = null;
+			}
+			return ok;
+		}
+	}
+
+	// the number of games that have been used
+	public int size() {
+		return games.size();
+	}
+
+	private Game game(String name) {
+		Game game = games.get(name);
+		if (game == null) {
+			Game added = new Game();
+			game = games.putIfAbsent(name, added);
+			if (game == null) game = added;
+		}
+		return game;
+	}
+
+	// the board for 'game', loaded the first time. the game's lock must be held
+	private Board board(Game game, String name) {
+		if (game.board == null) {
+			Board b = Main.loadBoard(name);
+			if (b == null) {
+				throw new IllegalStateException("couldn't load " + name);
+			}
+			b.dictionary = dictionary;
+			b.cache = cache;
+			game.board = b;
+		}
+		return game.board;
+	}
+
+	// the snapshot of 'game', taken now if there's none since its last change
+	private Board snapshot(Game game, String name) {
+		Board snapshot = game.snapshot;
+		if (snapshot == null) {
+			synchronized (game) {
+				snapshot = game.snapshot;
+				if (snapshot == null) {
+					snapshot = board(game, name).snapshot();
+					game.snapshot = snapshot;
+				}
+			}
+		}
+		return snapshot;
+	}
+
+	// drops the board of 'game', so it's loaded from its file again. the game's lock
+	// must be held
+	private void forget(Game game) {
+		if (game.board != null && game.board.journal != null) {
+			game.board.journal.close();
+		}
+		game.board = null;
+		game.snapshot = null;
+	}
+}
@@ -0,0 +1,225 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+// Ranks the best moves for a rack by how they play out, instead of by their score
+// alone. Each candidate (the top moves from Board.best) is played out many times on a
+// copy of the board:
+// 1. play the candidate
+// 2. deal the opponent a random rack from the unseen tiles (everything that isn't on
+//    the board or on our rack, see Rules.tiles) and play their best move
+// 3. with 2 plies, refill our rack from the rest and take our best move after that
+// The candidate's equity is its score, minus the opponent's, plus our follow-up's,
+// averaged over the iterations.
+//
+// Iteration i deals the same tiles for every candidate, so the differences between
+// candidates come from the moves and not the luck of the draw. Iterations run in
+// rounds on the common fork/join pool. After each round, candidates that have fallen
+// so far behind the leader that they're very unlikely to catch up (DOMINATED standard
+// errors of the difference) aren't simulated any more.
+public class Simulator {
+
+	// iterations per candidate in each round
+	private static final int ROUND = 16;
+
+	// no candidate is dropped before it has had this many iterations
+	private static final int MIN_ITERATIONS = 32;
+
+	// how far behind the leader a candidate can be before it's dropped, in standard
+	// errors (2.6 is about 1 in 200 of dropping one that is really as good)
+	private static final double DOMINATED = 2.6;
+
+	private Board board;
+	private Rules rules;
+	private Rack rack;
+
+	// the tiles we can't see, Tile.Blank for blanks
+	private char[] unseen;
+
+	// 1 or 2, see above
+	public int plies = 1;
+
+	// the deals are the same for the same seed
+	public long seed = 1;
+
+	public static class Candidate {
+		public Word word;
+		public long move;
+
+		// what's left on our rack after playing it
+		public Rack leave;
+
+		// the equity of each iteration so far, summed up
+		public int iterations;
+		public double sum;
+		public double sumSquares;
+
+		// dropped because it fell too far behind
+		public boolean dominated;
+
+		public double mean() {
+			return iterations > 0 ? sum / iterations : 0;
+		}
+
+		public double stddev() {
+			if (iterations < 2) return 0;
+			double mean = mean();
+			return Math.sqrt(Math.max(0, (sumSquares - iterations * mean * mean) / (iterations - 1)));
+		}
+
+		// the standard error of the mean
+		public double error() {
+			return iterations > 0 ? stddev() / Math.sqrt(iterations) : 0;
+		}
+
+		public String toString() {
+			return String.format("%7.2f %6.2f %6d%s  %s", mean(), stddev(), iterations,
+					dominated ? "-" : " ", word);
+		}
+	}
+
+	public Simulator(Board board, Rack rack) {
+		this.board = board;
+		this.rack = rack;
+		rules = board.rules();
+
+		// the bag minus the board and our rack
+		unseen = rack.unseen(board).toString().toCharArray();
+	}
+
+	// simulates the best 'count' moves (by score) for up to 'iterations' iterations
+	// each, or until 'millis' have gone by if that's more than 0. returns them with
+	// the best equity first. if there's only one move, it has nothing to be ranked
+	// against, but it's still simulated so that its equity means the same as ever
+	public ArrayList<Candidate> run(int count, int iterations, long millis) {
+		final long deadline = millis > 0 ? System.nanoTime() + millis * 1000000 : Long.MAX_VALUE;
+
+		ArrayList<Candidate> candidates = new ArrayList<Candidate>();
+		MoveList moves = board.best(rack, count);
+		for (int i = 0; i < moves.size(); i++) {
+			Candidate c = new Candidate();
+			c.move = moves.get(i);
+			c.word = board.word(c.move);
+			c.leave = rack.copy();
+			c.leave.remove(board.tiles(c.word));
+			candidates.add(c);
+		}
+
+		// otherwise, once one candidate is left it's the answer
+		int least = candidates.size() == 1 ? 1 : 2;
+
+		int done = 0;
+		while (done < iterations && System.nanoTime() < deadline && live(candidates) >= least) {
+			int round = Math.min(ROUND, iterations - done);
+
+			// every live candidate gets the same deals, 'done' to 'done + round'
+			ArrayList<ForkJoinTask<Double>> results = new ArrayList<ForkJoinTask<Double>>();
+			ArrayList<Candidate> owners = new ArrayList<Candidate>();
+			for (final Candidate c : candidates) {
+				if (c.dominated) continue;
+				for (int i = done; i < done + round; i++) {
+					final int deal = i;
+					results.add(ForkJoinPool.commonPool().submit(new Callable<Double>() {
+						public Double call() {
+							// out of time, this one won't count
+							if (System.nanoTime() >= deadline) return Double.NaN;
+							return simulate(c, deal);
+						}
+					}));
+					owners.add(c);
+				}
+			}
+			for (int i = 0; i < results.size(); i++) {
+				double equity = results.get(i).join();
+				if (Double.isNaN(equity)) continue;
+				Candidate c = owners.get(i);
+				c.iterations++;
+				c.sum += equity;
+				c.sumSquares += equity * equity;
+			}
+			done += round;
+
+			prune(candidates);
+		}
+
+		Collections.sort(candidates, new Comparator<Candidate>() {
+			public int compare(Candidate a, Candidate b) {
+				return Double.compare(b.mean(), a.mean());
+			}
+		});
+		return candidates;
+	}
+
+	// one play out of 'c', with deal number 'deal'. returns the equity
+	private double simulate(Candidate c, int deal) {
+		// shuffle just as much of the unseen tiles as we'll draw
+		Random random = new Random(seed * 1000003 + deal);
+		char[] bag = unseen.clone();
+		int draws = Math.min(bag.length, rules.rackSize * 2);
+		for (int i = 0; i < draws; i++) {
+			int j = i + random.nextInt(bag.length - i);
+			char t = bag[i];
+			bag[i] = bag[j];
+			bag[j] = t;
+		}
+		int next = 0;
+
+		Board b = board.copy();
+		b.play(c.move);
+
+		Rack theirs = new Rack();
+		while (theirs.size() < rules.rackSize && next < bag.length) {
+			theirs.add(bag[next++]);
+		}
+		MoveList reply = b.best(theirs, 1);
+		int opponent = 0;
+		if (reply.size() > 0) {
+			opponent = MoveList.score(reply.get(0));
+			if (plies > 1) b.play(reply.get(0));
+		}
+
+		int ours = 0;
+		if (plies > 1) {
+			Rack mine = c.leave.copy();
+			while (mine.size() < rules.rackSize && next < bag.length) {
+				mine.add(bag[next++]);
+			}
+			MoveList followUp = b.best(mine, 1);
+			if (followUp.size() > 0) {
+				ours = MoveList.score(followUp.get(0));
+			}
+		}
+
+		return c.word.score - opponent + ours;
+	}
+
+	// drops the candidates that are too far behind the leader (see DOMINATED)
+	private void prune(ArrayList<Candidate> candidates) {
+		Candidate leader = null;
+		for (Candidate c : candidates) {
+			if (c.dominated || c.iterations < MIN_ITERATIONS) continue;
+			if (leader == null || c.mean() > leader.mean()) leader = c;
+		}
+		if (leader == null) return;
+
+		for (Candidate c : candidates) {
+			if (c == leader || c.dominated || c.iterations < MIN_ITERATIONS) continue;
+			double error = Math.sqrt(c.error() * c.error() + leader.error() * leader.error());
+			if (leader.mean() - c.mean() > DOMINATED * error) {
+				c.dominated = true;
+			}
+		}
+	}
+
+	private int live(ArrayList<Candidate> candidates) {
+		int n = 0;
+		for (Candidate c : candidates) {
+			if (!c.dominated) n++;
+		}
+		return n;
+	}
+}
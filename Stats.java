@@ -0,0 +1,210 @@
+import java.io.PrintStream;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+// Counters and timers for what a search did, so a slow "find" can be explained without
+// a profiler. Board.findBest and allKnownWords always count (it's a few increments per
+// anchor and per move), report each search as a JFR event, and add their counts to
+// Board.stats when it's set, which is how "--stats" prints them (see print).
+//
+// The counters are plain fields: each thread counts into its own Stats, and those get
+// merged with add().
+public class Stats {
+
+	// findBest: rows and columns, and anchors (see MoveGenerator)
+	public long files;
+	public long filesBuilt;     // not cached from an earlier search (see Board.Line)
+	public long filesEmpty;     // no anchors at all
+	public long filesSkipped;   // every anchor's bound was under the bar (see TopMoves)
+	public long anchors;
+	public long anchorsSkipped;
+	public long anchorsStopped; // not searched (to the end) before the deadline
+
+	// move generation
+	public long edges;          // graph edges followed, ie dictionary lookups
+	public long crossRejects;   // letters that a cross check ruled out
+	public long candidates;     // placements that spell a word
+	public long scored;         // ... and score more than 0, offered to the top moves
+	public long moves;          // moves printed
+	public long cached;         // searches answered from the cache, without searching
+
+	// evaluate (play, and the moves findBest prints), and why plays were rejected
+	public long evaluated;
+	public long badGeometry;    // off the board, or doesn't match the letters there
+	public long badCrossWord;   // a new letter makes an invalid word across
+	public long noNewLetters;
+	public long noAnchor;       // doesn't touch a letter on the board (or the center)
+	public long badWord;        // the word itself isn't in the dictionary
+	public long wordChecks;     // checkWord calls
+	public long scores;         // score calls
+
+	// allKnownWords
+	public long keys;
+	public long keysRejected;   // ruled out by their letter signature (see Dictionary.shortfall)
+	public long words;
+
+	// wall time of each phase, in nanoseconds
+	public long setupNanos;     // parsing the rack, building the cross checks
+	public long searchNanos;    // generating and scoring moves
+	public long outputNanos;    // building and printing the best moves
+	public long wordsNanos;     // allKnownWords
+
+	public synchronized void add(Stats s) {
+		files += s.files;
+		filesBuilt += s.filesBuilt;
+		filesEmpty += s.filesEmpty;
+		filesSkipped += s.filesSkipped;
+		anchors += s.anchors;
+		anchorsSkipped += s.anchorsSkipped;
+		anchorsStopped += s.anchorsStopped;
+		edges += s.edges;
+		crossRejects += s.crossRejects;
+		candidates += s.candidates;
+		scored += s.scored;
+		moves += s.moves;
+		cached += s.cached;
+		evaluated += s.evaluated;
+		badGeometry += s.badGeometry;
+		badCrossWord += s.badCrossWord;
+		noNewLetters += s.noNewLetters;
+		noAnchor += s.noAnchor;
+		badWord += s.badWord;
+		wordChecks += s.wordChecks;
+		scores += s.scores;
+		keys += s.keys;
+		keysRejected += s.keysRejected;
+		words += s.words;
+		setupNanos += s.setupNanos;
+		searchNanos += s.searchNanos;
+		outputNanos += s.outputNanos;
+		wordsNanos += s.wordsNanos;
+	}
+
+	// the "--stats" summary
+	public synchronized void print(PrintStream out) {
+		if (files > 0) {
+			out.printf("files:      %d searched (%d built), %d without anchors, %d skipped by bound\n",
+					files, filesBuilt, filesEmpty, filesSkipped);
+			out.printf("anchors:    %d, %d skipped by bound, %d cut off by the deadline\n", anchors, 
+					anchorsSkipped, anchorsStopped);
+			out.printf("generator:  %d edges followed, %d letters ruled out by cross checks\n", edges, crossRejects);
+			out.printf("moves:      %d candidates, %d scored, %d printed\n", candidates, scored, moves);
+			out.printf("time:       setup %.3f ms, search %.3f ms, output %.3f ms\n",
+					setupNanos / 1e6, searchNanos / 1e6, outputNanos / 1e6);
+		}
+		if (cached > 0) {
+			out.printf("cache:      %d searches answered from earlier ones\n", cached);
+		}
+		if (evaluated > 0) {
+			out.printf("evaluate:   %d plays, %d word checks, %d scored\n", evaluated, wordChecks, scores);
+			out.printf("rejected:   %d geometry, %d cross word, %d no new letters, %d no anchor, %d word\n",
+					badGeometry, badCrossWord, noNewLetters, noAnchor, badWord);
+		}
+		if (keys > 0) {
+			out.printf("words:      %d keys, %d ruled out by signature, %d words in %.3f ms\n",
+					keys, keysRejected, words, wordsNanos / 1e6);
+		}
+	}
+
+	// one findBest call
+	@Name("scrabble.Find")
+	@Label("Find")
+	@Category("Scrabble")
+	@Description("One search for the best moves on a board")
+	@StackTrace(false)
+	static class FindEvent extends Event {
+		@Label("Rack")
+		String rack;
+
+		@Label("Limit")
+		int limit;
+
+		@Label("Files")
+		long files;
+
+		@Label("Files Skipped")
+		long filesSkipped;
+
+		@Label("Anchors")
+		long anchors;
+
+		@Label("Anchors Skipped")
+		long anchorsSkipped;
+
+		@Label("Exhaustive")
+		@Description("Searched everything, without running into the deadline")
+		boolean exhaustive;
+
+		@Label("Cached")
+		@Description("Answered from the result cache, without searching")
+		boolean cached;
+
+		@Label("Edges Followed")
+		long edges;
+
+		@Label("Candidates")
+		long candidates;
+
+		@Label("Moves")
+		long moves;
+
+		@Label("Setup")
+		@Timespan(Timespan.NANOSECONDS)
+		long setup;
+
+		@Label("Search")
+		@Timespan(Timespan.NANOSECONDS)
+		long search;
+
+		@Label("Output")
+		@Timespan(Timespan.NANOSECONDS)
+		long output;
+	}
+
+	// one row or column searched by findBest
+	@Name("scrabble.SearchFile")
+	@Label("Search File")
+	@Category("Scrabble")
+	@StackTrace(false)
+	static class SearchFileEvent extends Event {
+		@Label("Direction")
+		String dir;
+
+		@Label("Index")
+		int index;
+
+		@Label("Anchors")
+		long anchors;
+
+		@Label("Anchors Skipped")
+		long anchorsSkipped;
+
+		@Label("Candidates")
+		long candidates;
+	}
+
+	// one allKnownWords call
+	@Name("scrabble.Words")
+	@Label("Words")
+	@Category("Scrabble")
+	@StackTrace(false)
+	static class WordsEvent extends Event {
+		@Label("Rack")
+		String rack;
+
+		@Label("Keys")
+		long keys;
+
+		@Label("Keys Rejected")
+		long keysRejected;
+
+		@Label("Words")
+		long words;
+	}
+}
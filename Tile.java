@@ -1,5 +1,8 @@
 import java.io.Serializable;
 
+// One square of the board, the way boards used to be saved with Java serialization.
+// Board keeps its squares in flat arrays now, this is only read when an old board is
+// loaded (see Board.readObject), and for the Empty and Blank characters.
 public class Tile implements Serializable {
 	
 	private static final long serialVersionUID = 4556286527432162412L;
@@ -13,7 +16,6 @@ public class Tile implements Serializable {
 		letter = Empty;
 		letterBonus = 1;
 		wordBonus = 1;
-		pending = false;
 		fresh = false;
 		blank = false;
 	}
@@ -27,9 +29,6 @@ public class Tile implements Serializable {
 	// multipliers
 	public int letterBonus, wordBonus;
 	
-	// used for attempting word placement
-	public boolean pending;
-	
 	// used for undoing and indicating previous move
 	public boolean fresh;
 	
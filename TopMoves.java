@@ -0,0 +1,101 @@
+// The best moves a search has found so far, at most 'limit' of them (or all of them
+// when the limit is 0). Searches running on different threads offer their moves here,
+// and ask for the score that a move needs to still make the list, so they can skip
+// the parts of the board that can't score that much (see Board.findBest).
+//
+// Moves are packed longs (see MoveList), which sort best first: highest score, then
+// by where they are played, so the list doesn't depend on which thread found what
+// first. with a limit they are kept in a heap with the worst move on top.
+public class TopMoves {
+
+	private int limit;
+
+	// the moves we're keeping, a heap when there's a limit
+	private long[] heap;
+	private MoveList all;
+	private int size;
+
+	// the score of the worst move once the list is full
+	private volatile int threshold = Integer.MIN_VALUE;
+
+	public TopMoves(int limit) {
+		this.limit = limit;
+		if (limit > 0) {
+			heap = new long[limit];
+		}
+		else {
+			all = new MoveList();
+		}
+	}
+
+	// keeps the moves in 'moves' (which have been scored) that are one of the best
+	// 'limit' so far
+	public synchronized void offer(MoveList moves) {
+		for (int i = 0; i < moves.size(); i++) {
+			long move = moves.get(i);
+			if (all != null) {
+				all.add(move);
+			}
+			else if (size < limit) {
+				heap[size] = move;
+				up(size++);
+			}
+			else if (move < heap[0]) {
+				heap[0] = move;
+				down(0);
+			}
+		}
+		if (all == null && size == limit) {
+			threshold = MoveList.score(heap[0]);
+		}
+	}
+
+	// moves that score less than this can't make the list any more
+	public int threshold() {
+		return threshold;
+	}
+
+	// the moves, best first
+	public synchronized MoveList sorted() {
+		if (all != null) {
+			all.sort();
+			return all;
+		}
+		MoveList sorted = new MoveList();
+		for (int i = 0; i < size; i++) {
+			sorted.add(heap[i]);
+		}
+		sorted.sort();
+		return sorted;
+	}
+
+	// moves heap[i] up until its parent is worse (bigger)
+	private void up(int i) {
+		while (i > 0) {
+			int parent = (i - 1) / 2;
+			if (heap[parent] >= heap[i]) break;
+			swap(i, parent);
+			i = parent;
+		}
+	}
+
+	// moves heap[i] down until both children are better (smaller)
+	private void down(int i) {
+		while (true) {
+			int worst = i;
+			int left = i * 2 + 1;
+			int right = left + 1;
+			if (left < size && heap[left] > heap[worst]) worst = left;
+			if (right < size && heap[right] > heap[worst]) worst = right;
+			if (worst == i) break;
+			swap(i, worst);
+			i = worst;
+		}
+	}
+
+	private void swap(int i, int j) {
+		long t = heap[i];
+		heap[i] = heap[j];
+		heap[j] = t;
+	}
+}
@@ -5,6 +5,10 @@ public class Word implements Comparable<Word> {
 	public int score;
 	public String where;
 	
+	// 0-based location and "row" or "col", see setLocation
+	public int row, col;
+	public String dir;
+	
 	private ArrayList<String> bonuses;
 	private ArrayList<Word> attached;
 	private ArrayList<Integer> blankLetters;
@@ -26,6 +30,9 @@ public class Word implements Comparable<Word> {
 	
 	// 0-indexes
 	public void setLocation(int row, int col, String orientation) {
+		this.row = row;
+		this.col = col;
+		this.dir = orientation;
 		where = String.format("%s %d,%d", orientation, row+1, col+1);
 	}
 	
@@ -57,12 +64,20 @@ public class Word implements Comparable<Word> {
 		return me;
 	}
 
+	// same as comparing toString(), without building the strings
 	public int hashCode() {
-		return toString().hashCode();
+		return ((score * 31 + where.hashCode()) * 31 + word.hashCode()) * 31 + blankLetters().hashCode();
+	}
+	
+	public boolean equals(Object o) {
+		if (!(o instanceof Word)) return false;
+		Word w = (Word) o;
+		return score == w.score && where.equals(w.where) && word.equals(w.word) 
+				&& blankLetters().equals(w.blankLetters()) && bonusList().equals(w.bonusList());
 	}
 	
-	public boolean equals(Object w) {
-		return toString().equals(w.toString());
+	private ArrayList<String> bonusList() {
+		return bonuses != null ? bonuses : new ArrayList<String>();
 	}
 	
 	public void addBonuses(int wordBonus, int letterBonus) {
@@ -76,6 +91,12 @@ public class Word implements Comparable<Word> {
 		if (letterBonus == 3) bonuses.add("TL");
 	}
 	
+	// forgets what an earlier Board.evaluate of this word added
+	public void clearBonuses() {
+		bonuses = null;
+		attached = null;
+	}
+	
 	public void attach(Word w) {
 		if (attached == null) {
 			attached = new ArrayList<Word>();
@@ -96,6 +117,9 @@ public class Word implements Comparable<Word> {
 		if (attached != null) w.attached = (ArrayList<Word>) attached.clone();
 		if (blankLetters != null) w.blankLetters = (ArrayList<Integer>) blankLetters.clone();
 		w.where = where;
+		w.row = row;
+		w.col = col;
+		w.dir = dir;
 		
 		return w;
 	}
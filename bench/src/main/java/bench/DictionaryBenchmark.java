@@ -0,0 +1,50 @@
+package bench;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Loading the word list: building everything from dictionary.txt (what every command
+// did before there was a compiled dictionary), and mapping a compiled dictionary.bin.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class DictionaryBenchmark {
+
+	private File compiled;
+
+	@Setup
+	public void setup() throws Throwable {
+		compiled = File.createTempFile("dictionary", ".bin");
+		Solver.saveDictionary(Solver.compileDictionary(), compiled.getPath());
+	}
+
+	@TearDown
+	public void tearDown() {
+		compiled.delete();
+	}
+
+	@Benchmark
+	public Object compile() throws Throwable {
+		return Solver.compileDictionary();
+	}
+
+	@Benchmark
+	public Object map() throws Throwable {
+		return Solver.mapDictionary(compiled);
+	}
+}
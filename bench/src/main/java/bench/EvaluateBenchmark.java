@@ -0,0 +1,141 @@
+package bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+// Checking and scoring single plays, the way "play" does (and findBest does for the
+// moves it prints): Board.checkWord on its own, Board.score on its own, and all of
+// Board.evaluate. The plays are the best 100 moves that find comes up with for a
+// rack on the board, and each operation goes through all of them.
+//
+// score and evaluate fill in the Word they're given, so they get a new Word for each
+// play, which is part of what they allocate.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class EvaluateBenchmark {
+
+	private static final int PLAYS = 100;
+
+	@Param({ "opening", "midgame", "congested" })
+	public String board;
+
+	@Param({ "retains" })
+	public String rack;
+
+	private Object b;
+
+	// per play: letters, 0-based location, direction, blank indexes, where its word
+	// starts (it can start before the play on letters already on the board), and how
+	// many new letters it puts down
+	private String[] letters;
+	private int[] rows, cols;
+	private String[] dirs;
+	private int[][] blanks;
+	private int[] startRows, startCols;
+	private int[] placed;
+	private Object[] words;
+
+	@Setup
+	public void setup() throws Throwable {
+		b = Solver.board(board);
+
+		// find the plays, from what findBest prints: "<score>  <dir> <row>,<col>  <letters>  [bonuses]"
+		PrintStream out = System.out;
+		ByteArrayOutputStream found = new ByteArrayOutputStream();
+		System.setOut(new PrintStream(found));
+		try {
+			Solver.findBest(b, rack, PLAYS);
+		} finally {
+			System.setOut(out);
+		}
+
+		ArrayList<String> lines = new ArrayList<String>();
+		for (String line : found.toString().split("\n")) {
+			if (line.trim().length() > 0) lines.add(line.trim());
+		}
+		int n = lines.size();
+		letters = new String[n];
+		rows = new int[n];
+		cols = new int[n];
+		dirs = new String[n];
+		blanks = new int[n][];
+		startRows = new int[n];
+		startCols = new int[n];
+		placed = new int[n];
+		words = new Object[n];
+
+		for (int i = 0; i < n; i++) {
+			String[] fields = lines.get(i).split("\\s+");
+			dirs[i] = fields[1];
+			rows[i] = Integer.parseInt(fields[2].split(",")[0]) - 1;
+			cols[i] = Integer.parseInt(fields[2].split(",")[1]) - 1;
+
+			StringBuilder w = new StringBuilder();
+			ArrayList<Integer> blank = new ArrayList<Integer>();
+			for (char c : fields[3].toCharArray()) {
+				if (c == '*') blank.add(w.length() - 1);
+				else w.append(c);
+			}
+			letters[i] = w.toString();
+			blanks[i] = new int[blank.size()];
+			for (int j = 0; j < blank.size(); j++) blanks[i][j] = blank.get(j);
+
+			int dr = dirs[i].equals("col") ? 1 : 0;
+			int dc = dirs[i].equals("row") ? 1 : 0;
+			int r = rows[i];
+			int c = cols[i];
+			while (r - dr >= 0 && c - dc >= 0 && Solver.letter(b, r - dr, c - dc) != '-') {
+				r -= dr;
+				c -= dc;
+			}
+			startRows[i] = r;
+			startCols[i] = c;
+			for (int j = 0; j < letters[i].length(); j++) {
+				if (Solver.letter(b, rows[i] + dr * j, cols[i] + dc * j) == '-') placed[i]++;
+			}
+			words[i] = Solver.word(letters[i], rows[i], cols[i], dirs[i], blanks[i]);
+		}
+	}
+
+	@Benchmark
+	public void checkWord(Blackhole bh) throws Throwable {
+		for (int i = 0; i < words.length; i++) {
+			bh.consume(Solver.checkWord(b, words[i], startRows[i], startCols[i]));
+		}
+	}
+
+	@Benchmark
+	public void score(Blackhole bh) throws Throwable {
+		for (int i = 0; i < words.length; i++) {
+			Object w = Solver.word(letters[i], rows[i], cols[i], dirs[i], blanks[i]);
+			bh.consume(Solver.score(b, w, placed[i]));
+		}
+	}
+
+	@Benchmark
+	public void evaluate(Blackhole bh) throws Throwable {
+		for (int i = 0; i < words.length; i++) {
+			Object w = Solver.word(letters[i], rows[i], cols[i], dirs[i], blanks[i]);
+			bh.consume(Solver.evaluate(b, w));
+		}
+	}
+}
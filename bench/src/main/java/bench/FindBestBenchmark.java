@@ -0,0 +1,59 @@
+package bench;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// The "find" command (move generation, scoring and printing the best moves) on boards
+// at different stages of a game: a new game, after the first move, the middle of a
+// game, and a crowded board late in a game. limit 0 prints every move.
+//
+// findBest prints its moves, System.out goes nowhere while this runs.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class FindBestBenchmark {
+
+	@Param({ "empty", "opening", "midgame", "congested" })
+	public String board;
+
+	@Param({ "retains", "tra_e_s" })
+	public String rack;
+
+	@Param({ "10", "0" })
+	public int limit;
+
+	private Object b;
+	private PrintStream out;
+
+	@Setup
+	public void setup() throws Throwable {
+		b = Solver.board(board);
+		out = Solver.quiet();
+	}
+
+	@TearDown
+	public void tearDown() {
+		System.setOut(out);
+	}
+
+	@Benchmark
+	public void findBest() throws Throwable {
+		Solver.findBest(b, rack, limit);
+	}
+}
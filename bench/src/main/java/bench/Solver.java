@@ -0,0 +1,214 @@
+package bench;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+// The solver's classes are in the default package, which code in a package can't refer
+// to by name, and JMH only runs benchmarks that are in one. So the benchmarks get at
+// the solver through these method handles, which are looked up once. Board's private
+// methods (checkWord, score) are reached with a private lookup, which works for classes
+// on the class path.
+//
+// The handles have their reference types erased to Object, so the wrappers below can
+// call them with invokeExact and the JIT can inline straight through them.
+final class Solver {
+
+	static final Class<?> DICTIONARY = type("Dictionary");
+	static final Class<?> BOARD = type("Board");
+	static final Class<?> RULES = type("Rules");
+	static final Class<?> RACK = type("Rack");
+	static final Class<?> WORD = type("Word");
+
+	private static final MethodHandles.Lookup PUBLIC = MethodHandles.publicLookup();
+
+	private static final MethodHandle LOAD_DICTIONARY = method(DICTIONARY, "load", DICTIONARY);
+	private static final MethodHandle READ_WORDS = method(DICTIONARY, "readWords", java.util.ArrayList.class);
+	private static final MethodHandle COMPILE = method(DICTIONARY, "compile", DICTIONARY, List.class);
+	private static final MethodHandle SAVE = virtual(DICTIONARY, "save", void.class, String.class);
+	private static final MethodHandle MAP = method(DICTIONARY, "map", DICTIONARY, java.io.File.class);
+
+	private static final MethodHandle WWF = getter(RULES, "WORDS_WITH_FRIENDS");
+	private static final MethodHandle NEW_BOARD = constructor(BOARD, RULES);
+	private static final MethodHandle SET_DICTIONARY = setter(BOARD, "dictionary", DICTIONARY);
+	private static final MethodHandle LOAD = virtual(BOARD, "load", boolean.class, String.class);
+	private static final MethodHandle FIND_BEST = virtual(BOARD, "findBest", void.class, String.class, int.class);
+	private static final MethodHandle ALL_KNOWN_WORDS = virtual(BOARD, "allKnownWords", java.util.ArrayList.class, RACK);
+	private static final MethodHandle EVALUATE = virtual(BOARD, "evaluate", int.class, WORD);
+	private static final MethodHandle CHECK_WORD = hidden(BOARD, "checkWord", boolean.class, WORD, int.class, int.class);
+	private static final MethodHandle SCORE = hidden(BOARD, "score", int.class, WORD, int.class);
+	private static final MethodHandle LETTER = hidden(BOARD, "letter", char.class, int.class, int.class);
+
+	private static final MethodHandle PARSE_RACK = method(RACK, "parse", RACK, String.class);
+	private static final MethodHandle NEW_WORD = constructor(WORD, String.class, int.class, int.class, String.class);
+	private static final MethodHandle BLANK_LETTERS = virtual(WORD, "blankLetters", java.util.ArrayList.class);
+
+	private static Object dictionary;
+
+	private Solver() {
+	}
+
+	// the dictionary the boards use, loaded once for all benchmarks in the JVM
+	static synchronized Object dictionary() throws Throwable {
+		if (dictionary == null) {
+			dictionary = (Object) LOAD_DICTIONARY.invokeExact();
+		}
+		return dictionary;
+	}
+
+	// builds a new dictionary from dictionary.txt, the way Dictionary.load() does when
+	// there's no compiled copy
+	static Object compileDictionary() throws Throwable {
+		return (Object) COMPILE.invokeExact((Object) READ_WORDS.invokeExact());
+	}
+
+	static void saveDictionary(Object dictionary, String fileName) throws Throwable {
+		SAVE.invokeExact(dictionary, (Object) fileName);
+	}
+
+	static Object mapDictionary(java.io.File file) throws Throwable {
+		return (Object) MAP.invokeExact((Object) file);
+	}
+
+	// a WWF board: "empty" for a new game, otherwise one of the text snapshots in
+	// boards/ (the "print" format), read with Board.load. a new game isn't loaded from
+	// a snapshot because loading counts as a turn, and then the first move doesn't
+	// have to cover the center
+	static Object board(String fixture) throws Throwable {
+		Object board = (Object) NEW_BOARD.invokeExact((Object) WWF.invokeExact());
+		SET_DICTIONARY.invokeExact(board, dictionary());
+		if (fixture.equals("empty")) {
+			return board;
+		}
+
+		Path snapshot = Files.createTempFile("board", ".txt");
+		try (InputStream in = Solver.class.getResourceAsStream("/boards/" + fixture + ".txt")) {
+			if (in == null) throw new IllegalArgumentException("no such board: " + fixture);
+			Files.copy(in, snapshot, StandardCopyOption.REPLACE_EXISTING);
+		}
+		try {
+			if (!(boolean) LOAD.invokeExact(board, (Object) snapshot.toString())) {
+				throw new IllegalStateException("couldn't load board: " + fixture);
+			}
+		} finally {
+			Files.delete(snapshot);
+		}
+		return board;
+	}
+
+	static void findBest(Object board, String letters, int limit) throws Throwable {
+		FIND_BEST.invokeExact(board, (Object) letters, limit);
+	}
+
+	static Object rack(String letters) throws Throwable {
+		return (Object) PARSE_RACK.invokeExact((Object) letters);
+	}
+
+	static List<?> allKnownWords(Object board, Object rack) throws Throwable {
+		return (List<?>) (Object) ALL_KNOWN_WORDS.invokeExact(board, rack);
+	}
+
+	static int evaluate(Object board, Object word) throws Throwable {
+		return (int) EVALUATE.invokeExact(board, word);
+	}
+
+	static boolean checkWord(Object board, Object word, int row, int col) throws Throwable {
+		return (boolean) CHECK_WORD.invokeExact(board, word, row, col);
+	}
+
+	static int score(Object board, Object word, int placed) throws Throwable {
+		return (int) SCORE.invokeExact(board, word, placed);
+	}
+
+	static char letter(Object board, int row, int col) throws Throwable {
+		return (char) LETTER.invokeExact(board, row, col);
+	}
+
+	// a new Word, 0-based location, 'blanks' are the indexes of the blank letters
+	static Object word(String letters, int row, int col, String dir, int[] blanks) throws Throwable {
+		Object w = (Object) NEW_WORD.invokeExact((Object) letters, row, col, (Object) dir);
+		if (blanks.length > 0) {
+			@SuppressWarnings("unchecked")
+			List<Integer> list = (List<Integer>) (Object) BLANK_LETTERS.invokeExact(w);
+			for (int i : blanks) list.add(i);
+		}
+		return w;
+	}
+
+	// System.out, for code that prints its results
+	static PrintStream quiet() {
+		PrintStream out = System.out;
+		System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+		return out;
+	}
+
+	private static Class<?> type(String name) {
+		try {
+			return Class.forName(name);
+		} catch (ClassNotFoundException ex) {
+			throw new ExceptionInInitializerError(ex);
+		}
+	}
+
+	private static MethodHandle method(Class<?> c, String name, Class<?> returns, Class<?>... params) {
+		try {
+			return PUBLIC.findStatic(c, name, MethodType.methodType(returns, params)).asType(
+					MethodType.methodType(returns, params).erase());
+		} catch (ReflectiveOperationException ex) {
+			throw new ExceptionInInitializerError(ex);
+		}
+	}
+
+	private static MethodHandle virtual(Class<?> c, String name, Class<?> returns, Class<?>... params) {
+		try {
+			MethodHandle h = PUBLIC.findVirtual(c, name, MethodType.methodType(returns, params));
+			return h.asType(h.type().erase());
+		} catch (ReflectiveOperationException ex) {
+			throw new ExceptionInInitializerError(ex);
+		}
+	}
+
+	private static MethodHandle hidden(Class<?> c, String name, Class<?> returns, Class<?>... params) {
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(c, MethodHandles.lookup());
+			MethodHandle h = lookup.findVirtual(c, name, MethodType.methodType(returns, params));
+			return h.asType(h.type().erase());
+		} catch (ReflectiveOperationException ex) {
+			throw new ExceptionInInitializerError(ex);
+		}
+	}
+
+	private static MethodHandle constructor(Class<?> c, Class<?>... params) {
+		try {
+			MethodHandle h = PUBLIC.findConstructor(c, MethodType.methodType(void.class, params));
+			return h.asType(h.type().erase());
+		} catch (ReflectiveOperationException ex) {
+			throw new ExceptionInInitializerError(ex);
+		}
+	}
+
+	private static MethodHandle getter(Class<?> c, String name) {
+		try {
+			MethodHandle h = PUBLIC.findStaticGetter(c, name, c);
+			return h.asType(h.type().erase());
+		} catch (ReflectiveOperationException ex) {
+			throw new ExceptionInInitializerError(ex);
+		}
+	}
+
+	private static MethodHandle setter(Class<?> c, String name, Class<?> type) {
+		try {
+			MethodHandle h = PUBLIC.findSetter(c, name, type);
+			return h.asType(h.type().erase());
+		} catch (ReflectiveOperationException ex) {
+			throw new ExceptionInInitializerError(ex);
+		}
+	}
+}
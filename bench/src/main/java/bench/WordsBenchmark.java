@@ -0,0 +1,43 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// The "words" command: every word that a 7 letter rack can make, with no, one and two
+// blanks (each blank multiplies the number of words, and the ways to place them).
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class WordsBenchmark {
+
+	@Param({ "retains", "retain_", "retai__" })
+	public String rack;
+
+	private Object board;
+	private Object letters;
+
+	@Setup
+	public void setup() throws Throwable {
+		board = Solver.board("empty");
+		letters = Solver.rack(rack);
+	}
+
+	@Benchmark
+	public Object allKnownWords() throws Throwable {
+		return Solver.allKnownWords(board, letters);
+	}
+}
@@ -0,0 +1,59 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+public class DictionaryTest {
+
+	// "stresslessnesses" has 8 s's, more than the packed counts hold
+	private static final Dictionary WORDS = Dictionary.compile(Arrays.asList("stress", "stresslessnesses"));
+
+	@Test
+	public void countsMoreThanSevenOfALetter() {
+		int key = key("stresslessnesses");
+		assertEquals(8, WORDS.count(key, 's' - 'a'));
+		assertEquals(4, WORDS.count(key, 'e' - 'a'));
+	}
+
+	@Test
+	public void shortfallCountsEveryMissingLetter() {
+		int key = key("stresslessnesses");
+		assertEquals(1, shortfall(key, "sssssssteeeelnr"));
+		assertEquals(0, shortfall(key, "ssssssssteeeelnr"));
+		assertEquals(2, shortfall(key, "ssssssteeeelnr"));
+		assertEquals(0, shortfall(key("stress"), "sssssssteeeelnr"));
+	}
+
+	@Test
+	public void blankMakesUpTheEighthLetter() {
+		Board b = new Board(Rules.WORDS_WITH_FRIENDS);
+		b.dictionary = WORDS;
+		ArrayList<String> found = new ArrayList<String>();
+		for (Word w : b.allKnownWords(Rack.parse("sssssssteeeelnr_"))) {
+			if (w.word.equals("stresslessnesses")) found.add(w.toString());
+		}
+		// the blank can be any one of the s's, but it has to be one of them
+		assertEquals(8, found.size());
+		for (String w : found) {
+			assertTrue(w.contains("s*"), w);
+		}
+	}
+
+	private static int shortfall(int key, String letters) {
+		Rack rack = Rack.parse(letters);
+		return WORDS.shortfall(key, rack, rack.mask(), rack.packed(0), rack.packed(13), 16);
+	}
+
+	// the anagram class of 'word'
+	private static int key(String word) {
+		for (int key = 0; key < WORDS.keys(); key++) {
+			for (int id = WORDS.firstWord(key); id < WORDS.firstWord(key + 1); id++) {
+				if (WORDS.word(id).equals(word)) return key;
+			}
+		}
+		throw new IllegalArgumentException(word);
+	}
+}
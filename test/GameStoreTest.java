@@ -0,0 +1,137 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class GameStoreTest {
+
+	// where the games are in the file (see GameStore): the header, then two copies of
+	// each game, and each copy's board after its sequence, length and crc
+	private static final int HEADER = 64;
+	private static final int COPY = 512;
+	private static final int BOARD = 16;
+
+	@TempDir
+	File dir;
+
+	@Test
+	public void readsTheGameAsLastSaved() throws IOException {
+		String file = file();
+		GameStore store = new GameStore(file);
+		assertNull(store.get(3));
+
+		store.put(3, board("cat"));
+		store.put(3, board("dog"));
+		assertEquals(board("dog").toString(), store.get(3).toString());
+		assertEquals(board("dog").toString(), new GameStore(file).get(3).toString());
+		assertNull(store.get(4));
+	}
+
+	@Test
+	public void readsTheOlderCopyWhenTheNewerIsTorn() throws IOException {
+		String file = file();
+		GameStore store = new GameStore(file);
+		store.put(3, board("cat"));
+		// the second save goes to the second copy
+		store.put(3, board("dog"));
+		corrupt(file, at(3) + COPY + BOARD + 10);
+
+		assertEquals(board("cat").toString(), new GameStore(file).get(3).toString());
+	}
+
+	@Test
+	public void refusesAGameWithNoGoodCopy() throws IOException {
+		String file = file();
+		GameStore store = new GameStore(file);
+		store.put(3, board("cat"));
+		store.put(3, board("dog"));
+		corrupt(file, at(3) + BOARD + 10);
+		corrupt(file, at(3) + COPY + BOARD + 10);
+
+		try {
+			new GameStore(file).get(3);
+			fail("a damaged game was read");
+		} catch (IOException expected) {
+			// it isn't started over either
+		}
+	}
+
+	@Test
+	public void growsForGamesPastTheEnd() throws IOException {
+		String file = file();
+		GameStore store = new GameStore(file);
+		long length = new File(file).length();
+		assertNull(store.get(5000));
+
+		store.put(5000, board("cat"));
+		assertTrue(new File(file).length() > length);
+		assertEquals(board("cat").toString(), store.get(5000).toString());
+		assertNull(store.get(4999));
+	}
+
+	@Test
+	public void seesGamesAnotherStoreAddedPastTheEnd() throws IOException {
+		String file = file();
+		GameStore store = new GameStore(file);
+		// like another process, with the same file
+		GameStore other = new GameStore(file);
+		assertNull(store.get(5000));
+
+		other.put(5000, board("cat"));
+		assertEquals(board("cat").toString(), store.get(5000).toString());
+	}
+
+	@Test
+	public void rejectsIdsItCantHold() {
+		assertEquals(42, GameStore.gameId("games.store#42"));
+		assertEquals(-1, GameStore.gameId("games.store"));
+		try {
+			GameStore.gameId("games.store#" + GameStore.MAX_GAMES);
+			fail("an id past the end of the store was taken");
+		} catch (IllegalArgumentException expected) {
+			// that's the message the command line shows
+		}
+	}
+
+	private String file() {
+		return new File(dir, "games.store").getPath();
+	}
+
+	// where game 'id' starts in the file
+	private static long at(int id) {
+		return HEADER + (long) id * 2 * COPY;
+	}
+
+	// flips a bit of the byte at 'at' in 'file'
+	private static void corrupt(String file, long at) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.seek(at);
+		int b = raf.read();
+		raf.seek(at);
+		raf.write(b ^ 1);
+		raf.close();
+	}
+
+	// a board with 'word' across the center (no dictionary needed to load one)
+	private static Board board(String word) throws IOException {
+		StringBuilder text = new StringBuilder();
+		for (int row = 0; row < 15; row++) {
+			for (int col = 0; col < 15; col++) {
+				int i = col - 7;
+				text.append(row == 7 && i >= 0 && i < word.length() ? word.charAt(i) : '-');
+			}
+			text.append('\n');
+		}
+		Board b = new Board(Rules.WORDS_WITH_FRIENDS);
+		b.load(new StringReader(text.toString()));
+		return b;
+	}
+}
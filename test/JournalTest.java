@@ -0,0 +1,145 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.util.ArrayList;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class JournalTest {
+
+	private static Dictionary words;
+
+	@TempDir
+	File dir;
+
+	private Board board;
+
+	// the board as of each turn, starting with the empty one
+	private ArrayList<String> turns = new ArrayList<String>();
+
+	@BeforeAll
+	public static void loadDictionary() throws IOException {
+		words = Dictionary.load();
+	}
+
+	@AfterEach
+	public void closeJournal() {
+		if (board != null && board.journal != null) board.journal.close();
+	}
+
+	@Test
+	public void replaysPastCheckpoints() throws IOException {
+		String file = start();
+		play(2 * Journal.CHECKPOINT_EVERY + 3);
+		board.journal.close();
+
+		Journal journal = Journal.open(file);
+		assertEquals(board.toString(), journal.board().toString());
+		assertEquals(2 * Journal.CHECKPOINT_EVERY + 3, journal.history().size());
+		journal.close();
+	}
+
+	@Test
+	public void undoesSeveralTurns() throws IOException {
+		String file = start();
+		play(Journal.CHECKPOINT_EVERY + 4);
+
+		// back across a checkpoint
+		board.undo(6);
+		assertEquals(turns.get(Journal.CHECKPOINT_EVERY - 2), board.toString());
+		board.journal.close();
+
+		Journal journal = Journal.open(file);
+		assertEquals(turns.get(Journal.CHECKPOINT_EVERY - 2), journal.board().toString());
+		assertEquals(Journal.CHECKPOINT_EVERY - 2, journal.history().size());
+
+		assertEquals(turns.get(0), journal.undo(100).toString());
+		assertNull(journal.undo(1));
+		journal.close();
+	}
+
+	@Test
+	public void undoesALoadAsATurn() throws IOException {
+		start();
+		play(2);
+		Board other = new Board(Rules.WORDS_WITH_FRIENDS);
+		other.dictionary = words;
+		other.play(8, 6, "jive", "row");
+		board.load(new StringReader(other.toString()));
+
+		ArrayList<String> history = board.journal.history();
+		assertEquals(3, history.size());
+		assertEquals("(loaded a board)", history.get(2));
+
+		board.undo(1);
+		assertEquals(turns.get(2), board.toString());
+	}
+
+	@Test
+	public void cutsOffATornRecord() throws IOException {
+		String file = start();
+		play(3);
+		board.journal.close();
+		long length = new File(file).length();
+
+		// a move whose length says 20 bytes, with only 3 of them written
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.seek(length);
+		raf.write(new byte[] { 2, 0, 20, 7, 7, 1 });
+		raf.close();
+
+		Journal journal = Journal.open(file);
+		assertEquals(turns.get(3), journal.board().toString());
+		assertEquals(length, new File(file).length());
+		journal.close();
+	}
+
+	@Test
+	public void cutsOffARecordWithABadCrc() throws IOException {
+		String file = start();
+		play(2);
+		long length = new File(file).length();
+		play(1);
+		board.journal.close();
+
+		// the last byte is the last move's crc
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.seek(raf.length() - 1);
+		int last = raf.read();
+		raf.seek(raf.length() - 1);
+		raf.write(last ^ 1);
+		raf.close();
+
+		Journal journal = Journal.open(file);
+		assertEquals(turns.get(2), journal.board().toString());
+		assertEquals(length, new File(file).length());
+		journal.close();
+	}
+
+	// a new game with a journal, returns its file
+	private String start() throws IOException {
+		String file = new File(dir, "game").getPath();
+		board = new Board(Rules.WORDS_WITH_FRIENDS);
+		board.dictionary = words;
+		board.journal = Journal.create(file, board);
+		turns.add(board.toString());
+		return file;
+	}
+
+	// plays the best move for the same rack 'n' times
+	private void play(int n) {
+		for (int i = 0; i < n; i++) {
+			MoveList moves = board.best(Rack.parse("etaoinr"), 1);
+			assertEquals(1, moves.size());
+			board.play(moves.get(0));
+			turns.add(board.toString());
+		}
+	}
+}